@@ -0,0 +1,101 @@
+package benchmarks.decorators;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+// Calls on a decorated object with a chain of decorators that all override the called methods, compared to calls
+// on an object that isn't decorable. With 0 decorators the decorated object has never been decorated.
+//
+// The decorated objects are Counters of the program in src/main/flux/counter, which the build transpiles into a
+// package per dispatch mode. The calls go through method references, so that all modes (and the undecorated object)
+// are called the same way; each mode runs in its own fork, where the JIT inlines the reference.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecoratorBenchmark {
+    @Param({"static", "reflective", "callsite"})
+    public String dispatch;
+
+    @Param({"0", "1", "5", "20"})
+    public int decorators;
+
+    private IntSupplier directCount;
+    private Supplier<String> directName;
+    private IntSupplier decoratedCount;
+    private Supplier<String> decoratedName;
+
+    private static final class UndecoratedCounter {
+        int count() {
+            return 1;
+        }
+
+        String name() {
+            return "counter";
+        }
+    }
+
+    @Setup
+    public void setup() {
+        UndecoratedCounter direct = new UndecoratedCounter();
+        directCount = direct::count;
+        directName = direct::name;
+        switch (dispatch) {
+            case "static" -> {
+                var counter = benchmarks.decorators.static_dispatch.Counter._new();
+                var counters = benchmarks.decorators.static_dispatch.Counters._new();
+                for (int i = 0; i < decorators; i++) {
+                    counters.addIncrement(counter);
+                }
+                decoratedCount = counter::count;
+                decoratedName = counter::name;
+            }
+            case "reflective" -> {
+                var counter = benchmarks.decorators.reflective_dispatch.Counter._new();
+                var counters = benchmarks.decorators.reflective_dispatch.Counters._new();
+                for (int i = 0; i < decorators; i++) {
+                    counters.addIncrement(counter);
+                }
+                decoratedCount = counter::count;
+                decoratedName = counter::name;
+            }
+            case "callsite" -> {
+                var counter = benchmarks.decorators.callsite_dispatch.Counter._new();
+                var counters = benchmarks.decorators.callsite_dispatch.Counters._new();
+                for (int i = 0; i < decorators; i++) {
+                    counters.addIncrement(counter);
+                }
+                decoratedCount = counter::count;
+                decoratedName = counter::name;
+            }
+            default -> throw new IllegalArgumentException("Unknown dispatch: " + dispatch);
+        }
+        if (decoratedCount.getAsInt() != decorators + 1)
+            throw new IllegalStateException("The decorators weren't added");
+    }
+
+    @Benchmark
+    public int directPrimitive() {
+        return directCount.getAsInt();
+    }
+
+    @Benchmark
+    public String directObject() {
+        return directName.get();
+    }
+
+    @Benchmark
+    public int decoratedPrimitive() {
+        return decoratedCount.getAsInt();
+    }
+
+    @Benchmark
+    public String decoratedObject() {
+        return decoratedName.get();
+    }
+}
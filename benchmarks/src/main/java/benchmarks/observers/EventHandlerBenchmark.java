@@ -0,0 +1,67 @@
+package benchmarks.observers;
+
+import org.openjdk.jmh.annotations.*;
+import runtime.observers._EventHandler;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Publishing to, and subscribing to, an event handler with a given number of subscribers
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EventHandlerBenchmark {
+    private static final int ON_EVENT = 0; // the callback id, which the transpiler assigns to each callback name
+
+    // Published events are preallocated, so that boxing doesn't show up in the allocation rate
+    private static final Integer EVENT = 42;
+    private static final Integer[] BURST = new Integer[100];
+
+    static {
+        Arrays.fill(BURST, EVENT);
+    }
+
+    @Param({"1", "10", "1000", "100000"})
+    public int subscribers;
+
+    private _EventHandler<Integer> handler;
+    private Object churnSubscriber;
+    private long received;
+
+    @Setup
+    public void setup() {
+        handler = new _EventHandler<>();
+        for (int i = 0; i < subscribers; i++) {
+            handler._addSubscriber(new Object(), ON_EVENT, this::onEvent);
+        }
+        churnSubscriber = new Object();
+    }
+
+    private void onEvent(Integer event) {
+        received += event;
+    }
+
+    @Benchmark
+    public long publish() {
+        handler._publish(EVENT);
+        return received;
+    }
+
+    // The same number of events as 100 calls of publish
+    @Benchmark
+    public long publishAll() {
+        handler._publishAll(BURST);
+        return received;
+    }
+
+    // One subscriber subscribes and unsubscribes, while the others stay subscribed
+    @Benchmark
+    public int churn() {
+        handler._addSubscriber(churnSubscriber, ON_EVENT, this::onEvent);
+        handler._removeSubscriber(churnSubscriber, ON_EVENT);
+        return handler.subscriberCount();
+    }
+}
@@ -0,0 +1,77 @@
+package benchmarks.observers;
+
+import benchmarks.observers.ticker.Ticker;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+// Publishing to a Flow subscription of a transpiled publisher (src/main/flux/ticker), whose subscriber requests the
+// given number of events at a time. The behaviour of the subscriptions is tested by
+// testsuite/good/observers/test_flow_publisher.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlowPublisherBenchmark {
+    @Param({"1", "256"})
+    public int batch;
+
+    private Ticker ticker;
+    private Recorder recorder;
+
+    // Requests batch events at first, and again whenever it has received them
+    private static final class Recorder implements Flow.Subscriber<Integer> {
+        private final int batch;
+        private Flow.Subscription subscription;
+        private long sum;
+        private int pending;
+
+        Recorder(int batch) {
+            this.batch = batch;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            request();
+        }
+
+        @Override
+        public void onNext(Integer event) {
+            sum += event;
+            if (--pending == 0)
+                request();
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            throw new IllegalStateException("The subscription failed", error);
+        }
+
+        @Override
+        public void onComplete() {
+            throw new IllegalStateException("Publishers don't complete");
+        }
+
+        private void request() {
+            pending = batch;
+            subscription.request(batch);
+        }
+    }
+
+    @Setup
+    public void setup() {
+        ticker = Ticker._new();
+        recorder = new Recorder(batch);
+        ticker._asIntegerFlowPublisher().subscribe(recorder);
+    }
+
+    @Benchmark
+    public long publish() {
+        ticker.tick(1);
+        return recorder.sum;
+    }
+}
@@ -0,0 +1,54 @@
+package benchmarks.observers;
+
+import org.openjdk.jmh.annotations.*;
+import runtime.observers._EventHandler;
+import runtime.observers._IntEventHandler;
+
+import java.util.concurrent.TimeUnit;
+
+// Publishing a stream of distinct int events, which the boxed handler has to box (outside the Integer cache) and the
+// int handler doesn't
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IntEventHandlerBenchmark {
+    private static final int ON_EVENT = 0; // the callback id, which the transpiler assigns to each callback name
+
+    @Param({"1", "10"})
+    public int subscribers;
+
+    private _IntEventHandler intHandler;
+    private _EventHandler<Integer> boxedHandler;
+    private int next;
+    private long received;
+
+    @Setup
+    public void setup() {
+        intHandler = new _IntEventHandler();
+        boxedHandler = new _EventHandler<>();
+        for (int i = 0; i < subscribers; i++) {
+            intHandler._addSubscriber(new Object(), ON_EVENT, this::onEvent);
+            boxedHandler._addSubscriber(new Object(), ON_EVENT, this::onEvent);
+        }
+        next = 1_000;
+    }
+
+    private void onEvent(int event) {
+        received += event;
+    }
+
+    @Benchmark
+    public long publishInt() {
+        intHandler._publish(next++ | 1_000);
+        return received;
+    }
+
+    @Benchmark
+    public long publishBoxed() {
+        boxedHandler._publish(next++ | 1_000);
+        return received;
+    }
+}
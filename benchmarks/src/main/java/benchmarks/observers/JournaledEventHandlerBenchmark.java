@@ -0,0 +1,83 @@
+package benchmarks.observers;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import runtime.observers._EventHandler;
+import runtime.observers._EventJournal;
+import runtime.observers._JournaledEventHandler;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// The cost of journaling the published events, and of replaying the journal to a subscriber that subscribes late
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JournaledEventHandlerBenchmark {
+    private static final int ON_TRADE = 0; // the callback id, which the transpiler assigns to each callback name
+    private static final int REPLAYED_EVENTS = 10_000;
+
+    private record Trade(String symbol, int price) implements Serializable {}
+
+    private final Trade trade = new Trade("AAPL", 42);
+    private Path directory;
+    private _EventHandler<Trade> plain;
+    private _JournaledEventHandler<Trade> journaled;
+    private _JournaledEventHandler<Trade> replayed;
+    private long received;
+
+    @Setup
+    public void setup() throws IOException {
+        directory = Files.createTempDirectory("journal");
+        plain = new _EventHandler<>();
+        journaled = new _JournaledEventHandler<>(_EventJournal.open(directory.resolve("published"), 1 << 24, 4));
+        replayed = new _JournaledEventHandler<>(_EventJournal.open(directory.resolve("replayed")));
+        plain._addSubscriber(new Object(), ON_TRADE, this::onTrade);
+        journaled._addSubscriber(new Object(), ON_TRADE, this::onTrade);
+        for (int i = 0; i < REPLAYED_EVENTS; i++) {
+            replayed._publish(new Trade("S" + i, i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private void onTrade(Trade trade) {
+        received += trade.price();
+    }
+
+    @Benchmark
+    public long publishPlain() {
+        plain._publish(trade);
+        return received;
+    }
+
+    @Benchmark
+    public long publishJournaled() {
+        journaled._publish(trade);
+        return received;
+    }
+
+    // Replays the whole journal, the subscriber is removed again afterwards
+    @Benchmark
+    @OperationsPerInvocation(REPLAYED_EVENTS)
+    public void replay(Blackhole blackhole) {
+        Object subscriber = new Object();
+        replayed._addReplayingSubscriber(subscriber, ON_TRADE, 0, blackhole::consume);
+        replayed._removeSubscriber(subscriber, ON_TRADE);
+    }
+}
@@ -0,0 +1,68 @@
+package benchmarks.observers;
+
+import org.openjdk.jmh.annotations.*;
+import runtime.observers._EventHandler;
+import runtime.observers._KeyedEventHandler;
+
+import java.util.concurrent.TimeUnit;
+
+// Publishing an event that one of many subscribers cares about: with keyed subscriptions the handler only dispatches
+// to the subscriber of the event's key, otherwise every subscriber receives the event and compares the key itself
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class KeyedEventHandlerBenchmark {
+    private static final int ON_TRADE = 0; // the callback id, which the transpiler assigns to each callback name
+
+    private record Trade(String symbol, int price) {}
+
+    @Param({"10", "1000", "10000"})
+    public int subscribers;
+
+    private _KeyedEventHandler<Trade> keyed;
+    private _EventHandler<Trade> filtered;
+    private Trade[] trades;
+    private int next;
+    private long received;
+
+    @Setup
+    public void setup() {
+        keyed = new _KeyedEventHandler<>(Trade::symbol);
+        filtered = new _EventHandler<>();
+        trades = new Trade[subscribers];
+        for (int i = 0; i < subscribers; i++) {
+            String symbol = "S" + i;
+            trades[i] = new Trade(symbol, i);
+            keyed._addKeyedSubscriber(new Object(), ON_TRADE, symbol, this::onTrade);
+            filtered._addSubscriber(new Object(), ON_TRADE, trade -> {
+                if (trade.symbol().equals(symbol))
+                    onTrade(trade);
+            });
+        }
+    }
+
+    private void onTrade(Trade trade) {
+        received += trade.price();
+    }
+
+    private Trade nextTrade() {
+        Trade trade = trades[next];
+        next = next + 1 == trades.length ? 0 : next + 1;
+        return trade;
+    }
+
+    @Benchmark
+    public long publishKeyed() {
+        keyed._publish(nextTrade());
+        return received;
+    }
+
+    @Benchmark
+    public long publishFiltered() {
+        filtered._publish(nextTrade());
+        return received;
+    }
+}
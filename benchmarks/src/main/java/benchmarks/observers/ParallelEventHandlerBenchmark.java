@@ -0,0 +1,54 @@
+package benchmarks.observers;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import runtime.observers._EventHandler;
+import runtime.observers._ParallelEventHandler;
+
+import java.util.concurrent.TimeUnit;
+
+// Publishing to a large number of subscribers whose callbacks do some work, one at a time on the publishing thread or
+// in parallel on the common ForkJoinPool
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParallelEventHandlerBenchmark {
+    private static final int ON_EVENT = 0; // the callback id, which the transpiler assigns to each callback name
+    private static final Integer EVENT = 42;
+
+    @Param({"10000", "100000"})
+    public int subscribers;
+
+    @Param({"100"})
+    public int work; // the tokens of CPU work done by each callback
+
+    private _EventHandler<Integer> sequential;
+    private _ParallelEventHandler<Integer> parallel;
+
+    @Setup
+    public void setup() {
+        sequential = new _EventHandler<>();
+        parallel = new _ParallelEventHandler<>();
+        for (int i = 0; i < subscribers; i++) {
+            sequential._addSubscriber(new Object(), ON_EVENT, this::onEvent);
+            parallel._addSubscriber(new Object(), ON_EVENT, this::onEvent);
+        }
+    }
+
+    private void onEvent(Integer event) {
+        Blackhole.consumeCPU(work);
+    }
+
+    @Benchmark
+    public void publishSequential() {
+        sequential._publish(EVENT);
+    }
+
+    @Benchmark
+    public void publishParallel() {
+        parallel._publish(EVENT);
+    }
+}
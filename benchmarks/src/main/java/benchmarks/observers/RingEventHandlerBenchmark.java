@@ -0,0 +1,62 @@
+package benchmarks.observers;
+
+import org.openjdk.jmh.annotations.*;
+import runtime.observers._RingEventHandler;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+// Publishing through a ring buffer handler, where each subscriber has its own consumer thread. Since publishers wait
+// when the ring is full, this measures the sustained rate at which the consumers keep up with the publisher.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class RingEventHandlerBenchmark {
+    private static final int ON_EVENT = 0; // the callback id, which the transpiler assigns to each callback name
+
+    private static final Integer EVENT = 42;
+    private static final Integer[] BURST = new Integer[100];
+
+    static {
+        Arrays.fill(BURST, EVENT);
+    }
+
+    @Param({"1", "4"})
+    public int subscribers;
+
+    @Param({"BUSY_SPIN", "YIELD", "PARK"})
+    public _RingEventHandler.WaitStrategy waitStrategy;
+
+    private _RingEventHandler<Integer> handler;
+    private volatile long received;
+
+    @Setup
+    public void setup() {
+        handler = new _RingEventHandler<>(_RingEventHandler.DEFAULT_CAPACITY, waitStrategy);
+        for (int i = 0; i < subscribers; i++) {
+            handler._addSubscriber(new Object(), ON_EVENT, this::onEvent);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        handler._awaitDelivery();
+    }
+
+    private void onEvent(Integer event) {
+        received = event;
+    }
+
+    @Benchmark
+    public void publish() {
+        handler._publish(EVENT);
+    }
+
+    @Benchmark
+    public void publishAll() {
+        handler._publishAll(BURST);
+    }
+}
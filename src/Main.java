@@ -17,6 +17,7 @@ import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -24,17 +25,19 @@ public class Main {
     public static void main(String[] args) {
         try {
             Options options = new Options(args);
-            Transpiler transpiler = new Transpiler();
+            Transpiler transpiler = new Transpiler(options.getDecoratorDispatch(), options.getPackageName());
             for (String file : options.getSourceFiles()) {
                 transpiler.addSource(getNameWithoutExtension(file), parse(file));
             }
             TranspilerOutput output = transpiler.transpile();
             String outDir = options.getOutputDir();
             writeJavaFiles(outDir, output);
+            List<String> fileNames = new ArrayList<>(output.allFileNames());
+            fileNames.addAll(copyJavaFiles(outDir, options.getJavaFiles()));
 
             String javaCompiler = options.getJavaCompiler();
             if (javaCompiler != null) {
-                runJavaCompiler(javaCompiler, outDir, output.allFileNames());
+                runJavaCompiler(javaCompiler, outDir, fileNames);
             }
             String javaInterpreter = options.getJavaInterpreter();
             String mainFile = output.lookupMainFileName();
@@ -91,6 +94,18 @@ public class Main {
         }
     }
 
+    // Copy the Java files that were given as input into the output directory, and return their names
+    private static List<String> copyJavaFiles(String outDir, List<String> javaFiles) throws IOException {
+        List<String> fileNames = new ArrayList<>();
+        for (String javaFile : javaFiles) {
+            Path source = Path.of(javaFile);
+            String fileName = source.getFileName().toString();
+            Files.copy(source, Path.of(outDir, fileName), StandardCopyOption.REPLACE_EXISTING);
+            fileNames.add(fileName);
+        }
+        return fileNames;
+    }
+
     // Run the java compiler on the given files in the given directory
     private static void runJavaCompiler(String compiler, String outDir, List<String> files)
             throws IOException, InterruptedException {
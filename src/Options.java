@@ -1,3 +1,5 @@
+import transpiler.DecoratorDispatch;
+
 import java.io.File;
 import java.nio.file.Path;
 import java.util.*;
@@ -7,29 +9,42 @@ final class Options {
     private static final String COMPILE_FLAG = "compile";
     private static final String RUN_FLAG = "run";
     private static final String OUTPUT_FLAG = "output";
+    private static final String DECORATORS_FLAG = "decorators";
+    private static final String PACKAGE_FLAG = "package";
     private static final String INPUT_EXTENSION = "flux";
+    private static final String JAVA_EXTENSION = "java"; // of Java sources that are compiled with the output
     private static final String USAGE = """
             Usage:
                [-c|--compile [JAVA_COMPILER]]
                [-r|--run     [JAVA_INTERPRETER]]
                [-o|--output  OUTPUT_DIR]
-               INPUT_FILES...""";
+               [-d|--decorators static|reflective|callsite]
+               [-p|--package PACKAGE]
+               INPUT_FILES...
+            The input files are Conflux files and Java files (e.g. a harness that a Conflux main calls), which are
+            copied to the output directory and must be in the package of the transpiled code.""";
 
     private final String javaCompiler;
     private final String javaInterpreter;
     private final String outputDir;
+    private final DecoratorDispatch decoratorDispatch;
+    private final String packageName;
     private final List<String> sourceFiles;
+    private final List<String> javaFiles;
 
     Options(String[] args) {
         List<String> argList = new ArrayList<>(List.of(args));
         List<String> sourceFiles = new ArrayList<>();
+        List<String> javaFiles = new ArrayList<>();
 
         String javaCompiler = parseFlag(COMPILE_FLAG, "javac", argList);
         String javaInterpreter = parseFlag(RUN_FLAG, "java", argList);
         String outputDir = parseFlag(OUTPUT_FLAG, null, argList);
+        String decoratorDispatch = parseFlag(DECORATORS_FLAG, null, argList);
+        String packageName = parseFlag(PACKAGE_FLAG, null, argList);
 
 
-        argList.forEach(f -> addInputFileToList(f, sourceFiles));// the remaining args must be Conflux files
+        argList.forEach(f -> addInputFile(f, sourceFiles, javaFiles));// the remaining args must be input files
         if (argList.isEmpty()) {
             reportAndExit("No input files");
         }
@@ -42,7 +57,10 @@ final class Options {
         this.javaCompiler = javaCompiler == null ? null : getJavaBinary(javaCompiler);
         this.javaInterpreter = javaInterpreter == null ? null : getJavaBinary(javaInterpreter);
         this.outputDir = outputDir;
+        this.decoratorDispatch = parseDecoratorDispatch(decoratorDispatch);
+        this.packageName = packageName;
         this.sourceFiles = List.copyOf(sourceFiles);
+        this.javaFiles = List.copyOf(javaFiles);
     }
 
     // Try to get the complete path to a java binary, if it fails, the argument is returned unchanged
@@ -58,6 +76,21 @@ final class Options {
         }
     }
 
+    private DecoratorDispatch parseDecoratorDispatch(String dispatch) {
+        if (dispatch == null) {
+            return DecoratorDispatch.STATIC;
+        }
+        return switch (dispatch) {
+            case "static" -> DecoratorDispatch.STATIC;
+            case "reflective" -> DecoratorDispatch.REFLECTIVE;
+            case "callsite" -> DecoratorDispatch.CALL_SITE;
+            default -> {
+                reportAndExit("Invalid argument to flag " + DECORATORS_FLAG + ": " + dispatch);
+                yield null;
+            }
+        };
+    }
+
     // Parse a flag and its argument. If the flag isn't present return null. If flag is present, remove the flag
     // (and argument if present) from the input, and return the argument. If defaultValue is null, the flag must
     // have an argument, otherwise exit with error.
@@ -89,25 +122,29 @@ final class Options {
         return flagValue;
     }
 
-    private void addInputFileToList(String fileName, List<String> list) {
+    private void addInputFile(String fileName, List<String> sourceFiles, List<String> javaFiles) {
         File file = new File(fileName);
         if (file.isDirectory()) {
             for (File fileInDir : file.listFiles()) {
                 String path = fileInDir.getAbsolutePath();
-                if (isInputFileValid(path)) {
-                    list.add(path);
+                if (hasExtension(path, INPUT_EXTENSION)) {
+                    sourceFiles.add(path);
+                } else if (hasExtension(path, JAVA_EXTENSION)) {
+                    javaFiles.add(path);
                 }
             }
-        } else if (isInputFileValid(fileName)) {
-            list.add(fileName);
+        } else if (hasExtension(fileName, INPUT_EXTENSION)) {
+            sourceFiles.add(fileName);
+        } else if (hasExtension(fileName, JAVA_EXTENSION)) {
+            javaFiles.add(fileName);
         } else {
-            reportAndExit("Invalid extension for file '%s', must be '.%s or a directory"
-                    .formatted(file, INPUT_EXTENSION));
+            reportAndExit("Invalid extension for file '%s', must be '.%s', '.%s' or a directory"
+                    .formatted(file, INPUT_EXTENSION, JAVA_EXTENSION));
         }
     }
 
-    private boolean isInputFileValid(String file) {
-        String validPattern = "^.*\\." + INPUT_EXTENSION + "$";
+    private boolean hasExtension(String file, String extension) {
+        String validPattern = "^.*\\." + extension + "$";
         return Path.of(file).getFileName().toString().matches(validPattern);
     }
 
@@ -128,13 +165,20 @@ final class Options {
                    javaCompiler:    "%s"
                    javaInterpreter: "%s"
                    outputDir:       "%s"
+                   decorators:      %s
+                   packageName:     %s
                    sourceFiles:     %s
+                   javaFiles:       %s
                 }""")
-                .formatted(javaCompiler, javaInterpreter, outputDir, sourceFiles);
+                .formatted(javaCompiler, javaInterpreter, outputDir, decoratorDispatch, packageName, sourceFiles,
+                           javaFiles);
     }
 
     String getJavaCompiler() { return javaCompiler; }
     String getJavaInterpreter() { return javaInterpreter; }
     String getOutputDir() { return outputDir; }
+    DecoratorDispatch getDecoratorDispatch() { return decoratorDispatch; }
+    String getPackageName() { return packageName; } // null for the default package of the transpiler
     List<String> getSourceFiles() { return sourceFiles; } // this list is read-only
+    List<String> getJavaFiles() { return javaFiles; } // this list is read-only
 }
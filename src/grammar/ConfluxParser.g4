@@ -5,6 +5,13 @@ options{
     tokenVocab=ConfluxLexer;
 }
 
+@members {
+    // Whether the next token is the given contextual keyword, see asyncKeyword
+    private boolean isKeyword(String keyword) {
+        return keyword.equals(_input.LT(1).getText());
+    }
+}
+
 program : importDeclaration* (typeDeclaration | decoratorDeclaration) EOF ;
 
 //Type rules
@@ -42,7 +49,33 @@ importDeclaration : IMPORT Identifier (DOT Identifier)* SEMI;
 
 typeExtend : EXTENDS Identifier ( COMMA Identifier)*;
 
-typePublishes : PUBLISHES type (COMMA type)* ;
+typePublishes : PUBLISHES asyncDelivery? publishedType (COMMA publishedType)* ;
+
+asyncDelivery : asyncKeyword (LPAREN deliveryOption (COMMA deliveryOption)* RPAREN)? ;
+
+publishedType : (ringBuffer | latestKeyword | eventKey | parallelDelivery | eventJournal)? type ;
+
+ringBuffer : ringKeyword (LPAREN deliveryOption (COMMA deliveryOption)* RPAREN)? ;
+
+deliveryOption : Identifier | NUMBER ;
+
+eventKey : keyedKeyword LPAREN Identifier RPAREN ;
+
+parallelDelivery : parallelKeyword (LPAREN NUMBER RPAREN)? ;
+
+eventJournal : journaledKeyword LPAREN StringLiteral (COMMA Identifier)? (COMMA NUMBER COMMA NUMBER)? RPAREN ;
+
+// Contextual keywords, which are only keywords where the rules above and the publish and subscriber statements expect
+// them, and identifiers everywhere else (e.g. a variable may be named async)
+asyncKeyword : {isKeyword("async")}? Identifier ;
+ringKeyword : {isKeyword("ring")}? Identifier ;
+latestKeyword : {isKeyword("latest")}? Identifier ;
+keyedKeyword : {isKeyword("keyed")}? Identifier ;
+parallelKeyword : {isKeyword("parallel")}? Identifier ;
+journaledKeyword : {isKeyword("journaled")}? Identifier ;
+allKeyword : {isKeyword("all")}? Identifier ;
+batchKeyword : {isKeyword("batch")}? Identifier ;
+weakKeyword : {isKeyword("weak")}? Identifier ;
 
 decoratorDeclaration: DECORATOR decoratorId DECORATES typeId decoratorBody ;
 
@@ -148,12 +181,12 @@ case : CASE expression COLON statement* ;
 
 default : DEFAULT COLON statement* ;
 
-publishStatement : PUBLISH expression explicitEventTypes? SEMI ;
+publishStatement : PUBLISH allKeyword? expression explicitEventTypes? SEMI ;
 
-addSubscriberStatement : publisherExpression ADD SUBSCRIBER subscriberExpression
-                         COLONCOLON subscriberCallback explicitEventTypes? SEMI;
+addSubscriberStatement : publisherExpression ADD (weakKeyword | batchKeyword)? SUBSCRIBER subscriberExpression
+                         COLONCOLON subscriberCallback explicitEventTypes? ((FOR | FROM) expression)? SEMI;
 
-removeSubscriberStatement : publisherExpression REMOVE SUBSCRIBER subscriberExpression
+removeSubscriberStatement : publisherExpression REMOVE batchKeyword? SUBSCRIBER subscriberExpression
                             COLONCOLON subscriberCallback explicitEventTypes? SEMI;
 
 explicitEventTypes : LPAREN type (COMMA type)* RPAREN ;
@@ -161,7 +194,9 @@ publisherExpression : referenceExpression ;
 subscriberExpression : referenceExpression ;
 subscriberCallback : Identifier ;
 
-removeDecoratorStatement : decoratedObject REMOVE DECORATOR decoratorRef SEMI;
+removeDecoratorStatement : decoratedObject REMOVE DECORATOR decoratorRef SEMI
+                         | decoratedObject REMOVE DECORATOR LPAREN decoratorRef (COMMA decoratorRef)* RPAREN SEMI
+                         ;
 
 decoratedObject : referenceExpression ;
 decoratorRef : referenceExpression ;
@@ -213,6 +248,10 @@ methodCall : qualifiedIdentifier LPAREN parameterList? RPAREN;
 
 baseCall : BASE DOT Identifier LPAREN parameterList? RPAREN;
 
-addDecoratorExpression : decoratedObject ADD DECORATOR decoratorId DOT methodId LPAREN parameterList? RPAREN ;
+addDecoratorExpression : decoratedObject ADD DECORATOR decoratorConstruction
+                       | decoratedObject ADD DECORATOR LPAREN decoratorConstruction (COMMA decoratorConstruction)* RPAREN
+                       ;
+
+decoratorConstruction : decoratorId DOT methodId LPAREN parameterList? RPAREN ;
 
 referenceExpression : methodChain | arrayAccess | qualifiedIdentifier ;
@@ -1,33 +1,77 @@
 package runtime.decorators;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 
 public abstract class _AbstractDecorator implements _Decorator {
-    private _Decorator previous;
-    private _Decorator next;
+    // The types whose methods the generated code of the decorator forwards to the previous decorators, see
+    // _previousImplementer
+    private final Class<?>[] forwardedTypes;
+    // The handler of the chain that contains this decorator, and the place of this decorator in the latest snapshot of
+    // the chain that it was linked to, see link()
+    private volatile _DecoratorHandler handler;
+    private volatile _DecoratorChain.Link link;
+
+    protected _AbstractDecorator(Class<?>... forwardedTypes) {
+        this.forwardedTypes = forwardedTypes;
+    }
+
+    // _invoke and _invoker call the method on the first decorator, starting at this one and going down the chain, that
+    // has the method. That decorator is found in the dispatch tables of the chain, without walking the chain.
 
     public <R> R _invoke(Class<R> returnType, String methodName, Class<?>[] argTypes, Object[] args) {
+        _DecoratorChain.Target target = link().target(methodName, argTypes);
         try {
-            return returnType.cast(getClass().getMethod(methodName, argTypes).invoke(this, args));
-        } catch (InvocationTargetException e) {
-            throw new RuntimeException(e.getCause());
-        } catch (IllegalAccessException e) {
-            throw new AssertionError("This is unreachable - getMethod only returns public methods");
-        } catch (NoSuchMethodException e) {
-            // Method didn't exist on this decorator, forward the call to the previous decorator
-            return previous._invoke(returnType, methodName, argTypes, args);
+            return returnType.cast((Object) target.method().spread().invokeExact(target.receiver(), args));
+        } catch (Throwable e) {
+            throw _MethodHandleCache.unchecked(e);
         }
     }
 
-    @Override
-    public final _Decorator _getPrevious() { return previous; }
+    public MethodHandle _invoker(String methodName, MethodType type) {
+        return link().target(methodName, type).invoker(type);
+    }
 
-    @Override
-    public final void _setPrevious(_Decorator previous) { this.previous = previous; }
+    // The closest object below this decorator that implements the forwarded type with the given index. It's looked up
+    // once for each snapshot of the chain, so forwarding a call doesn't walk the chain.
+    protected final Object _previousImplementer(int typeIndex) {
+        return link().implementers()[typeIndex];
+    }
+
+    Class<?>[] forwardedTypes() {
+        return forwardedTypes;
+    }
+
+    // The object that the _invoke methods call methods on
+    Object receiver() {
+        return this;
+    }
+
+    // Called by the handler before it publishes a snapshot of the chain that contains this decorator
+    final void attach(_DecoratorHandler handler) {
+        this.handler = handler;
+    }
+
+    // Called by the handler after it has published a snapshot of the chain that contains this decorator
+    final void link(_DecoratorChain.Link link) {
+        this.link = link;
+    }
+
+    // The place of this decorator in the snapshot that the handler has published. The cached link is used if it's in
+    // that snapshot, otherwise (while the handler is publishing a new snapshot) the decorator is looked up in it. A
+    // decorator that has been removed keeps its last link, so that calls which were already in it can complete.
+    private _DecoratorChain.Link link() {
+        _DecoratorChain.Link link = this.link;
+        _DecoratorChain chain = handler.chain();
+        if (link != null && link.chain() == chain)
+            return link;
+        _DecoratorChain.Link published = chain.linkOf(this);
+        return published != null ? published : link;
+    }
 
     @Override
-    public final _Decorator _getNext() { return next; }
+    public final _Decorator _getPrevious() { return link().previous(); }
 
     @Override
-    public final void _setNext(_Decorator next) { this.next = next; }
+    public final _Decorator _getNext() { return link().next(); }
 }
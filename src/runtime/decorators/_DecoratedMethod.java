@@ -0,0 +1,122 @@
+package runtime.decorators;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.MutableCallSite;
+
+// Describes a method of a decorator wrapper class that is called through a call site of the decorator runtime. The
+// index is unique among the methods of the wrapper class, and is used to find the top target of the method in a chain.
+//
+// The generated code keeps the description, and the invoker of its call site, in static final fields, so that the JIT
+// treats the invoker as a constant and can inline the target of the call site. The call site is shared by all the
+// objects of the wrapper class: it's linked to the method that the top decorator of the first call has, and checks on
+// each call that the top target in the chain of the called object is that method. A call whose top target is another
+// method, because decorators were added or removed or because the object has another chain, relinks the call site to
+// that method. After MAX_RELINKS relinks the call site is megamorphic, and such calls take an indirect call, which is
+// correct but not inlined.
+public final class _DecoratedMethod {
+    private static final int MAX_RELINKS = 8;
+
+    private static final MethodHandle LINKED;
+    private static final MethodHandle RELINK;
+    private static final MethodHandle IS_METHOD;
+    private static final MethodHandle RECEIVER;
+    private static final MethodHandle INVOKER;
+
+    static {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            LINKED = lookup.findStatic(_DecoratedMethod.class, "linked", MethodType.methodType(
+                    _DecoratorChain.Linked.class, _DecoratedMethod.class, _DecoratorHandler.class));
+            RELINK = lookup.findVirtual(_DecoratedMethod.class, "relink", MethodType.methodType(
+                    void.class, _DecoratorChain.Linked.class));
+            IS_METHOD = lookup.findStatic(_DecoratedMethod.class, "isMethod", MethodType.methodType(
+                    boolean.class, _DecoratorChain.Linked.class, _MethodHandleCache.Entry.class));
+            RECEIVER = lookup.findVirtual(_DecoratorChain.Linked.class, "receiver",
+                                          MethodType.methodType(Object.class));
+            INVOKER = lookup.findVirtual(_DecoratorChain.Linked.class, "invoker",
+                                         MethodType.methodType(MethodHandle.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int index;
+    private final String name;
+    private final Class<?>[] argTypes;
+    private final MethodType type; // without the receiver
+    private final MutableCallSite callSite;
+    private int relinks; // guarded by this
+
+    public _DecoratedMethod(int index, String name, Class<?> returnType, Class<?>[] argTypes) {
+        this.index = index;
+        this.name = name;
+        this.argTypes = argTypes;
+        this.type = MethodType.methodType(returnType, argTypes);
+        // The first call links the call site, and is itself an indirect call
+        this.callSite = new MutableCallSite(MethodHandles.filterArguments(relinkingLinkedCall(), 0, linked()));
+    }
+
+    int index() { return index; }
+
+    String name() { return name; }
+
+    Class<?>[] argTypes() { return argTypes; }
+
+    // The type of a handle for calling the method on a receiver of any class
+    MethodType invokerType() {
+        return type.insertParameterTypes(0, Object.class);
+    }
+
+    // A handle of the type (_DecoratorHandler, arguments) -> return type, see _DecoratorHandler.invoker
+    MethodHandle invoker() {
+        return callSite.dynamicInvoker();
+    }
+
+    // Link the call site to the given top target of the method, unless it has been relinked too often. The guard then
+    // relinks it again for other targets, or calls them indirectly once the call site is megamorphic.
+    private synchronized void relink(_DecoratorChain.Linked linked) {
+        if (relinks == MAX_RELINKS)
+            return;
+        relinks++;
+        _MethodHandleCache.Entry method = linked.method();
+        // (Linked, arguments) -> return type, for calls whose top target is the method
+        MethodHandle direct = MethodHandles.filterArguments(method.direct().asType(invokerType()), 0, RECEIVER);
+        MethodHandle fallback = relinks < MAX_RELINKS ? relinkingLinkedCall() : indirectLinkedCall();
+        MethodHandle guarded = MethodHandles.guardWithTest(MethodHandles.insertArguments(IS_METHOD, 1, method),
+                                                           direct, fallback);
+        callSite.setTarget(MethodHandles.filterArguments(guarded, 0, linked()));
+    }
+
+    // (_DecoratorHandler) -> Linked, the top target of the method in the chain of the handler
+    private MethodHandle linked() {
+        return MethodHandles.insertArguments(LINKED, 0, this);
+    }
+
+    // (Linked, arguments) -> return type, relinks the call site to the linked target and calls it through its invoker
+    private MethodHandle relinkingLinkedCall() {
+        return MethodHandles.foldArguments(indirectLinkedCall(), MethodHandles.insertArguments(RELINK, 0, this));
+    }
+
+    // (Linked, arguments) -> return type, calls the linked target through its invoker
+    private MethodHandle indirectLinkedCall() {
+        // (Linked, Linked, arguments) -> return type
+        MethodHandle call = MethodHandles.filterArguments(MethodHandles.exactInvoker(invokerType()), 0,
+                                                          INVOKER, RECEIVER);
+        int[] reorder = new int[call.type().parameterCount()];
+        for (int i = 1; i < reorder.length; i++) {
+            reorder[i] = i - 1;
+        }
+        return MethodHandles.permuteArguments(call, type.insertParameterTypes(0, _DecoratorChain.Linked.class),
+                                              reorder);
+    }
+
+    private static _DecoratorChain.Linked linked(_DecoratedMethod method, _DecoratorHandler handler) {
+        return handler.chain().linked(method);
+    }
+
+    private static boolean isMethod(_DecoratorChain.Linked linked, _MethodHandleCache.Entry method) {
+        return linked.method() == method;
+    }
+}
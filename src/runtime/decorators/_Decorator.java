@@ -1,18 +1,24 @@
 package runtime.decorators;
 
-public interface _Decorator {
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
 
-    void _setNext(_Decorator next);
+public interface _Decorator {
+    Class<?>[] NO_ARG_TYPES = new Class<?>[0];
+    Object[] NO_ARGS = new Object[0];
 
     _Decorator _getNext();
 
     _Decorator _getPrevious();
 
-    void _setPrevious(_Decorator previous);
-
     <R> R _invoke(Class<R> returnType, String methodName, Class<?>[] argTypes, Object[] args);
 
     default <R> R _invoke(Class<R> returnType, String methodName) {
-        return _invoke(returnType, methodName, new Class[]{}, new Object[]{});
+        return _invoke(returnType, methodName, NO_ARG_TYPES, NO_ARGS);
     }
+
+    // Return a handle of the given type, i.e. the type of the method without the receiver, that calls the method. The
+    // generated code invokes it with invokeExact, which neither boxes the arguments and return value nor allocates an
+    // argument array, so one handle covers every arity and return type.
+    MethodHandle _invoker(String methodName, MethodType type);
 }
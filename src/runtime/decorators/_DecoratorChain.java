@@ -0,0 +1,227 @@
+package runtime.decorators;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+// An immutable snapshot of the decorator chain of an object. The handler replaces its chain with a new snapshot
+// whenever decorators are added or removed. Decorators look up their neighbours in the snapshot that the handler has
+// published, so a call never sees a chain that is being modified, and calls don't need to lock.
+final class _DecoratorChain {
+    // From the identity decorator at position 0 to the top decorator
+    private final _AbstractDecorator[] decorators;
+    private final Link[] links; // of the decorators at the same positions
+    // The types whose top implementers the handler's object calls, and their top implementers in this snapshot, see
+    // _DecoratorHandler.topImplementer
+    private final Class<?>[] topTypes;
+    private final Object[] topImplementers;
+    private final ConcurrentHashMap<String, DispatchTable[]> dispatchTables;
+    // The top targets of the methods that are called through call sites, indexed by _DecoratedMethod.index
+    private volatile Linked[] linked;
+
+    _DecoratorChain(Class<?>[] topTypes, _AbstractDecorator... decorators) {
+        this.decorators = decorators;
+        this.links = new Link[decorators.length];
+        for (int i = 0; i < decorators.length; i++) {
+            links[i] = new Link(this, i, implementers(i));
+        }
+        this.topTypes = topTypes;
+        this.topImplementers = new Object[topTypes.length];
+        for (int k = 0; k < topTypes.length; k++) {
+            topImplementers[k] = implementer(topTypes[k], decorators.length - 1);
+        }
+        this.dispatchTables = new ConcurrentHashMap<>();
+        this.linked = new Linked[0];
+    }
+
+    _AbstractDecorator top() {
+        return decorators[decorators.length - 1];
+    }
+
+    _DecoratorChain with(_AbstractDecorator[] added) {
+        _AbstractDecorator[] updated = Arrays.copyOf(decorators, decorators.length + added.length);
+        System.arraycopy(added, 0, updated, decorators.length, added.length);
+        return new _DecoratorChain(topTypes, updated);
+    }
+
+    // Return a chain without the given decorators, or this chain if none of them are in it. The identity decorator is
+    // never removed.
+    _DecoratorChain without(List<_Decorator> removed) {
+        _AbstractDecorator[] updated = new _AbstractDecorator[decorators.length];
+        int size = 0;
+        for (_AbstractDecorator decorator : decorators) {
+            if (decorator instanceof _IdentityDecorator || removed.stream().noneMatch(r -> r == decorator))
+                updated[size++] = decorator;
+        }
+        return size == decorators.length ? this : new _DecoratorChain(topTypes, Arrays.copyOf(updated, size));
+    }
+
+    // Attach all decorators in the chain to the handler, before the handler publishes this snapshot
+    void attach(_DecoratorHandler handler) {
+        for (_AbstractDecorator decorator : decorators) {
+            decorator.attach(handler);
+        }
+    }
+
+    // Let all decorators in the chain cache their links in this snapshot, after the handler has published it
+    void link() {
+        for (int i = 0; i < decorators.length; i++) {
+            decorators[i].link(links[i]);
+        }
+    }
+
+    // Return the place of the given decorator in this snapshot, or null if it isn't in it
+    Link linkOf(_AbstractDecorator decorator) {
+        for (int i = 0; i < decorators.length; i++) {
+            if (decorators[i] == decorator)
+                return links[i];
+        }
+        return null;
+    }
+
+    // The closest object at or below the top of this snapshot that implements the top type with the given index
+    Object topImplementer(int typeIndex) {
+        return topImplementers[typeIndex];
+    }
+
+    // Find the closest objects below the given position that implement the types that its decorator forwards to
+    private Object[] implementers(int position) {
+        Class<?>[] types = decorators[position].forwardedTypes();
+        Object[] implementers = new Object[types.length];
+        for (int k = 0; k < types.length; k++) {
+            implementers[k] = implementer(types[k], position - 1);
+        }
+        return implementers;
+    }
+
+    // Find the closest object at or below the given position that implements the given type
+    private Object implementer(Class<?> type, int position) {
+        int i = position;
+        while (i > 0 && !type.isInstance(decorators[i])) {
+            i--;
+        }
+        return decorators[i].receiver(); // the base object implements all decorated types
+    }
+
+    // Return the first decorator, at or below the given position, that has the given method
+    Target target(String methodName, Class<?>[] argTypes, int position) {
+        DispatchTable[] tables = dispatchTables.get(methodName);
+        if (tables != null) {
+            for (DispatchTable table : tables) {
+                if (Arrays.equals(table.argTypes, argTypes))
+                    return table.targets[position];
+            }
+        }
+        return addDispatchTable(methodName, argTypes.clone()).targets[position];
+    }
+
+    // The same, for the method with the parameter types of the given method type
+    Target target(String methodName, MethodType type, int position) {
+        DispatchTable[] tables = dispatchTables.get(methodName);
+        if (tables != null) {
+            for (DispatchTable table : tables) {
+                if (table.hasParameters(type))
+                    return table.targets[position];
+            }
+        }
+        return addDispatchTable(methodName, type.parameterArray()).targets[position];
+    }
+
+    // Threads that race to build a table build equal ones, so it doesn't matter which of them is found later
+    private DispatchTable addDispatchTable(String methodName, Class<?>[] argTypes) {
+        DispatchTable table = makeDispatchTable(methodName, argTypes);
+        dispatchTables.merge(methodName, new DispatchTable[]{table}, (current, added) -> {
+            DispatchTable[] updated = Arrays.copyOf(current, current.length + 1);
+            updated[current.length] = added[0];
+            return updated;
+        });
+        return table;
+    }
+
+    Target topTarget(String methodName, Class<?>[] argTypes) {
+        return target(methodName, argTypes, decorators.length - 1);
+    }
+
+    // Return the top target of the given method, with a handle for calling it on a receiver of any class
+    Linked linked(_DecoratedMethod method) {
+        Linked[] linked = this.linked;
+        int index = method.index();
+        return index < linked.length && linked[index] != null ? linked[index] : link(method);
+    }
+
+    private synchronized Linked link(_DecoratedMethod method) {
+        int index = method.index();
+        if (index < linked.length && linked[index] != null) // linked while we waited for the lock
+            return linked[index];
+        Target target = topTarget(method.name(), method.argTypes());
+        Linked[] updated = Arrays.copyOf(linked, Math.max(index + 1, linked.length));
+        updated[index] = new Linked(target.receiver(), target.method(),
+                                    target.method().direct().asType(method.invokerType()));
+        linked = updated;
+        return updated[index];
+    }
+
+    private DispatchTable makeDispatchTable(String methodName, Class<?>[] argTypes) {
+        Target[] targets = new Target[decorators.length];
+        Target target = null;
+        for (int i = 0; i < decorators.length; i++) {
+            Object receiver = decorators[i].receiver();
+            var method = _MethodHandleCache.of(receiver.getClass()).lookup(methodName, argTypes);
+            if (method != null) {
+                target = new Target(receiver, method, method.direct().bindTo(receiver));
+            } else if (target == null) {
+                throw new AssertionError("This is unreachable - the transpiler ensures that the first" +
+                                         " decorator in the chain contains all the requested methods");
+            }
+            targets[i] = target;
+        }
+        return new DispatchTable(argTypes, targets);
+    }
+
+    // The place of a decorator in a snapshot of the chain, and the implementers of its forwarded types below it
+    record Link(_DecoratorChain chain, int position, Object[] implementers) {
+        _AbstractDecorator previous() {
+            return position == 0 ? null : chain.decorators[position - 1];
+        }
+
+        _AbstractDecorator next() {
+            return position == chain.decorators.length - 1 ? null : chain.decorators[position + 1];
+        }
+
+        Target target(String methodName, Class<?>[] argTypes) {
+            return chain.target(methodName, argTypes, position);
+        }
+
+        Target target(String methodName, MethodType type) {
+            return chain.target(methodName, type, position);
+        }
+    }
+
+    // A decorator that has a method, and the handles for calling the method on it. The bound handle calls the method on
+    // the decorator, and has the type of the method without the receiver.
+    record Target(Object receiver, _MethodHandleCache.Entry method, MethodHandle bound) {
+        // Return the bound handle with the given type, which only differs from the type of the method if the decorator
+        // overrides it with a covariant return type. The handle caches its last conversion, so this doesn't allocate.
+        MethodHandle invoker(MethodType type) {
+            return bound.asType(type);
+        }
+    }
+
+    // A target of a call site, the invoker has the invoker type of the called method
+    record Linked(Object receiver, _MethodHandleCache.Entry method, MethodHandle invoker) {}
+
+    // The targets of calls to one method, indexed by the position of the decorator that the call starts at
+    private record DispatchTable(Class<?>[] argTypes, Target[] targets) {
+        boolean hasParameters(MethodType type) {
+            if (type.parameterCount() != argTypes.length)
+                return false;
+            for (int i = 0; i < argTypes.length; i++) {
+                if (type.parameterType(i) != argTypes[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+}
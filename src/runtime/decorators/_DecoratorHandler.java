@@ -1,34 +1,87 @@
 package runtime.decorators;
 
-// manages a chain of decorators on an object
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.List;
+
+// manages a chain of decorators on an object. The handler may be used from several threads: calls read the current
+// snapshot of the chain without locking, while changes to the chain are serialized and publish a new snapshot.
 public final class _DecoratorHandler {
-    private _Decorator decorator;
+    private volatile _DecoratorChain chain;
+
+    // The top implementers of the given types are looked up whenever the chain changes, see topImplementer
+    public _DecoratorHandler(Object base, Class<?>... topTypes) {
+        setChain(new _DecoratorChain(topTypes, new _IdentityDecorator(base)));
+    }
+
+    // Return a handle of the type (_DecoratorHandler, arguments) -> return type of the given method, that calls the
+    // method on the top decorator that has it in the chain of the handler it's invoked with. The handle should be
+    // kept in a static final field and invoked with invokeExact, see _DecoratedMethod.
+    public static MethodHandle invoker(_DecoratedMethod method) {
+        return method.invoker();
+    }
 
-    public _DecoratorHandler(Object base) {
-        this.decorator = new _IdentityDecorator(base);
+    // Convert an exception thrown by an invoker to an unchecked exception, which the caller should rethrow
+    public static RuntimeException unchecked(Throwable e) {
+        return _MethodHandleCache.unchecked(e);
     }
 
     public <R> R callTopDecorator(Class<R> returnType, String methodName, Class<?>[] argTypes, Object[] args) {
-        return decorator._invoke(returnType, methodName, argTypes, args);
+        return chain.top()._invoke(returnType, methodName, argTypes, args);
     }
 
-    public DecoratorRef addDecorator(Object decoratedObj, _Decorator next) {
-        decorator._setNext(next);
-        next._setPrevious(decorator);
-        decorator = next;
-        return new DecoratorRef(decoratedObj, decorator);
+    // Return a handle of the given type that calls the method on the top decorator that has it, see _Decorator._invoker
+    public MethodHandle topInvoker(String methodName, MethodType type) {
+        return chain.top()._invoker(methodName, type);
+    }
+
+    // Return the top decorator that implements the type with the given index among the handler's top types, or the
+    // base object if there is no such decorator
+    public Object topImplementer(int typeIndex) {
+        return chain.topImplementer(typeIndex);
+    }
+
+    public DecoratorRef addDecorator(Object decoratedObj, _AbstractDecorator next) {
+        return addDecorators(decoratedObj, new _AbstractDecorator[]{next})[0];
+    }
+
+    // Add the decorators in order, as one change of the chain
+    public synchronized DecoratorRef[] addDecorators(Object decoratedObj, _AbstractDecorator[] decorators) {
+        setChain(chain.with(decorators));
+        DecoratorRef[] refs = new DecoratorRef[decorators.length];
+        for (int i = 0; i < decorators.length; i++) {
+            refs[i] = new DecoratorRef(decoratedObj, decorators[i]);
+        }
+        return refs;
     }
 
     public void removeDecorator(Object decoratedObject, DecoratorRef ref) {
-        if (decoratedObject != ref._decoratedObject())
-            return;
-        _Decorator toRemove = ref._decorator();
-        if (toRemove == decorator) { // the decorator to remove is the last decorator in the chain
-            decorator = toRemove._getPrevious();
-            decorator._setNext(null);
-        } else {
-            toRemove._getPrevious()._setNext(toRemove._getNext());
-            toRemove._getNext()._setPrevious(toRemove._getPrevious());
+        removeDecorator(decoratedObject, new DecoratorRef[]{ref});
+    }
+
+    // Remove the referenced decorators as one change of the chain. References to other objects, and to decorators that
+    // have already been removed, are ignored.
+    public synchronized void removeDecorator(Object decoratedObject, DecoratorRef[] refs) {
+        List<_Decorator> removed = new ArrayList<>(refs.length);
+        for (DecoratorRef ref : refs) {
+            if (decoratedObject == ref._decoratedObject())
+                removed.add(ref._decorator());
+        }
+        _DecoratorChain updated = chain.without(removed);
+        if (updated != chain) {
+            setChain(updated);
         }
     }
+
+    // Publish a new snapshot of the chain. Must be called while holding the lock.
+    private void setChain(_DecoratorChain updated) {
+        updated.attach(this);
+        chain = updated;
+        updated.link();
+    }
+
+    _DecoratorChain chain() {
+        return chain;
+    }
 }
@@ -0,0 +1,96 @@
+package runtime.decorators;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Caches the method handles used for reflective decorator calls. Each (class, method name, argument types) triple is
+// resolved at most once, after that a lookup is a map lookup followed by a scan over the overloads with the given name,
+// which doesn't allocate or throw exceptions. A method that doesn't exist is cached as well (with null handles).
+final class _MethodHandleCache {
+    private static final ClassValue<_MethodHandleCache> CACHES = new ClassValue<>() {
+        @Override
+        protected _MethodHandleCache computeValue(Class<?> type) {
+            return new _MethodHandleCache(type);
+        }
+    };
+
+    private final Class<?> type;
+    private final ConcurrentHashMap<String, Entry[]> overloads;
+
+    private _MethodHandleCache(Class<?> type) {
+        this.type = type;
+        this.overloads = new ConcurrentHashMap<>();
+    }
+
+    static _MethodHandleCache of(Class<?> type) {
+        return CACHES.get(type);
+    }
+
+    // Return the handles for the public method with the given name and argument types, or null if the class doesn't
+    // have such a method
+    Entry lookup(String methodName, Class<?>[] argTypes) {
+        Entry entry = find(methodName, argTypes);
+        return entry.direct == null ? null : entry;
+    }
+
+    // Convert an exception thrown by an invoked method handle to an unchecked exception, unchecked exceptions are
+    // returned unchanged (and should be rethrown by the caller)
+    static RuntimeException unchecked(Throwable e) {
+        if (e instanceof RuntimeException runtimeException)
+            return runtimeException;
+        if (e instanceof Error error)
+            throw error;
+        return new RuntimeException(e);
+    }
+
+    private Entry find(String methodName, Class<?>[] argTypes) {
+        Entry[] entries = overloads.get(methodName);
+        if (entries != null) {
+            for (Entry entry : entries) {
+                if (Arrays.equals(entry.argTypes, argTypes))
+                    return entry;
+            }
+        }
+        return resolve(methodName, argTypes);
+    }
+
+    private synchronized Entry resolve(String methodName, Class<?>[] argTypes) {
+        Entry[] entries = overloads.getOrDefault(methodName, new Entry[0]);
+        for (Entry entry : entries) { // another thread may have resolved the method while we waited for the lock
+            if (Arrays.equals(entry.argTypes, argTypes))
+                return entry;
+        }
+        Entry resolved = new Entry(argTypes.clone(), null, null);
+        for (Method method : type.getMethods()) {
+            if (method.getName().equals(methodName) && Arrays.equals(method.getParameterTypes(), argTypes)) {
+                resolved = makeEntry(resolved.argTypes, method);
+                break;
+            }
+        }
+        Entry[] updated = Arrays.copyOf(entries, entries.length + 1);
+        updated[entries.length] = resolved;
+        overloads.put(methodName, updated);
+        return resolved;
+    }
+
+    private static Entry makeEntry(Class<?>[] argTypes, Method method) {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.publicLookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new AssertionError("This is unreachable - getMethods only returns public methods");
+        }
+        int arity = argTypes.length;
+        MethodHandle spread = handle.asType(MethodType.genericMethodType(arity + 1)).asSpreader(Object[].class, arity);
+        return new Entry(argTypes, spread, handle);
+    }
+
+    // Handles invoking a method on their first argument:
+    //  - spread has the type (Object, Object[])Object, i.e. the receiver followed by an array of the arguments
+    //  - direct has the type of the method itself, with the declaring class as the first parameter
+    record Entry(Class<?>[] argTypes, MethodHandle spread, MethodHandle direct) {}
+}
@@ -0,0 +1,387 @@
+package runtime.observers;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// The event handler used by transpiled publishers that are declared with "publishes async". Publishing hands the
+// event to each subscriber's mailbox and returns immediately; the callbacks are run by an executor, which uses virtual
+// threads when the JVM supports them and daemon platform threads otherwise.
+//
+// Every subscription has its own mailbox that is drained by at most one task at a time, so a subscriber receives the
+// events in the order they were published, while different subscribers are notified concurrently. A slow subscriber
+// only delays its own events. A batch published with _publishAll reaches a batch subscriber as one list. The events
+// that have not been delivered yet can be awaited with _awaitDelivery (for one handler) or _awaitAll (for all
+// asynchronous and conflating handlers); the latter is also done by a shutdown hook, so that events published just
+// before the program ends are still delivered. The hook gives up after SHUTDOWN_TIMEOUT_MILLIS, so that a subscriber
+// that never returns doesn't keep the JVM from exiting. Awaiting from a callback of the handler that is awaited never
+// returns.
+//
+// The mailboxes are unbounded unless the handler is created with a capacity (e.g. "publishes async(256, dropOldest)"),
+// then the overflow policy decides what publishing to a full mailbox does. The depth of a subscriber's mailbox and the
+// number of its events that were dropped can be queried, to find a capacity that suits the subscribers. With BLOCK, a
+// callback that publishes to its own full mailbox waits forever. With FAIL, an event is still delivered to every
+// mailbox that has room, and publishing then throws for the full ones.
+//
+// A handler created with a key function has keyed subscribers like _KeyedEventHandler, which only receive the events
+// with their key in their mailbox.
+public final class _AsyncEventHandler<E> {
+    public static final int DEFAULT_CAPACITY = 1024; // for bounded mailboxes
+    private static final Object NULL_EVENT = new Object(); // ConcurrentLinkedQueue doesn't allow null elements
+    static final Pending ALL_PENDING = new Pending(); // also counts the events of _ConflatingEventHandler
+    // How long the shutdown hook waits for the pending events, the events that are still pending then are lost
+    public static final long SHUTDOWN_TIMEOUT_MILLIS = 5_000;
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(_AsyncEventHandler::awaitPending));
+    }
+
+    private final _EventDispatcher<E> mailboxes;
+    private final Executor executor;
+    private final int capacity; // 0 for unbounded mailboxes
+    private final Overflow overflow;
+    private final Pending pending;
+    private final LongAdder dropped;
+    // With FAIL, the exception for the full mailboxes of the event that the current thread is publishing
+    private final ThreadLocal<IllegalStateException> overflows;
+
+    public _AsyncEventHandler() {
+        this(DefaultExecutor.INSTANCE);
+    }
+
+    public _AsyncEventHandler(Executor executor) {
+        this(executor, 0, Overflow.BLOCK, null);
+    }
+
+    public _AsyncEventHandler(Function<? super E, ?> keyOf) {
+        this(DefaultExecutor.INSTANCE, 0, Overflow.BLOCK, Objects.requireNonNull(keyOf));
+    }
+
+    public _AsyncEventHandler(int capacity, Overflow overflow) {
+        this(capacity, overflow, null);
+    }
+
+    public _AsyncEventHandler(int capacity, Overflow overflow, Function<? super E, ?> keyOf) {
+        this(DefaultExecutor.INSTANCE, capacity, overflow, keyOf);
+        if (capacity < 1)
+            throw new IllegalArgumentException("The capacity of a mailbox must be positive, got " + capacity);
+    }
+
+    private _AsyncEventHandler(Executor executor, int capacity, Overflow overflow, Function<? super E, ?> keyOf) {
+        this.mailboxes = keyOf == null ? new _EventHandler<>() : new _KeyedEventHandler<>(keyOf);
+        this.executor = Objects.requireNonNull(executor);
+        this.capacity = capacity;
+        this.overflow = Objects.requireNonNull(overflow);
+        this.pending = new Pending();
+        this.dropped = new LongAdder();
+        this.overflows = overflow == Overflow.FAIL ? new ThreadLocal<>() : null;
+    }
+
+    // What publishing does when the mailbox of a subscriber is full
+    public enum Overflow {
+        // Wait until the subscriber has taken an event from its mailbox
+        BLOCK,
+        // Drop the oldest event in the mailbox to make room for the published one
+        DROP_OLDEST,
+        // Drop the published event
+        DROP_NEWEST,
+        // Drop the published event and throw an IllegalStateException once it was delivered to the other subscribers
+        FAIL
+    }
+
+    // Subscribing again with the same subscriber and callback id replaces the subscription, events that are already
+    // in the mailbox of the old subscription are still delivered to the old callback
+    public void _addSubscriber(Object subInstance, int callbackId, Consumer<E> callback) {
+        mailboxes._addSubscriber(subInstance, callbackId, new Mailbox<>(Objects.requireNonNull(callback)));
+    }
+
+    public void _addBatchSubscriber(Object subInstance, int callbackId, Consumer<List<E>> callback) {
+        mailboxes._addBatchSubscriber(subInstance, callbackId, new Mailbox<>(Objects.requireNonNull(callback)));
+    }
+
+    public void _addWeakSubscriber(Object subInstance, int callbackId, Consumer<E> callback) {
+        mailboxes._addWeakSubscriber(subInstance, callbackId, new Mailbox<>(Objects.requireNonNull(callback)));
+    }
+
+    public void _addKeyedSubscriber(Object subInstance, int callbackId, Object key, Consumer<E> callback) {
+        if (!(mailboxes instanceof _KeyedEventHandler<E> keyed))
+            throw new IllegalStateException("The events of this handler have no key");
+        keyed._addKeyedSubscriber(subInstance, callbackId, key, new Mailbox<>(Objects.requireNonNull(callback)));
+    }
+
+    public void _removeSubscriber(Object subInstance, int callbackId) {
+        mailboxes._removeSubscriber(subInstance, callbackId);
+    }
+
+    public void _publish(E event) {
+        if (overflows == null)
+            mailboxes._publish(event);
+        else
+            failOnOverflow(() -> mailboxes._publish(event));
+    }
+
+    public void _publishAll(Collection<? extends E> events) {
+        if (overflows == null)
+            mailboxes._publishAll(events);
+        else
+            failOnOverflow(() -> mailboxes._publishAll(events));
+    }
+
+    public void _publishAll(E[] events) {
+        if (overflows == null)
+            mailboxes._publishAll(events);
+        else
+            failOnOverflow(() -> mailboxes._publishAll(events));
+    }
+
+    // Run the fan-out, then throw the exception of the first full mailbox with those of the other full mailboxes as
+    // suppressed exceptions. A publish by a callback that is run on the publishing thread has its own exception.
+    private void failOnOverflow(Runnable fanOut) {
+        IllegalStateException outer = overflows.get();
+        overflows.remove();
+        IllegalStateException overflow;
+        try {
+            fanOut.run();
+        } finally {
+            overflow = overflows.get();
+            overflows.set(outer);
+        }
+        if (overflow != null)
+            throw overflow;
+    }
+
+    public int subscriberCount() {
+        return mailboxes.subscriberCount();
+    }
+
+    // The number of events in the mailbox of the given subscription, or 0 if there is no such subscription. This takes
+    // a scan of the mailbox if it is unbounded.
+    public int queueDepth(Object subInstance, int callbackId) {
+        Mailbox<?> mailbox = mailbox(subInstance, callbackId);
+        return mailbox == null ? 0 : mailbox.events.size();
+    }
+
+    // The number of events that were dropped because the mailbox of the given subscription was full
+    public long droppedEventCount(Object subInstance, int callbackId) {
+        Mailbox<?> mailbox = mailbox(subInstance, callbackId);
+        return mailbox == null ? 0 : mailbox.dropped.sum();
+    }
+
+    // The number of events in the mailboxes of all subscriptions, including the events whose callbacks are running
+    public long queueDepth() {
+        return pending.count();
+    }
+
+    // The number of events that were dropped because a mailbox was full, for all subscriptions so far
+    public long droppedEventCount() {
+        return dropped.sum();
+    }
+
+    @SuppressWarnings("unchecked")
+    private Mailbox<?> mailbox(Object subInstance, int callbackId) {
+        return (Mailbox<?>) mailboxes.subscribedCallback(subInstance, callbackId);
+    }
+
+    public long expungedSubscriberCount() {
+        return mailboxes.expungedSubscriberCount();
+    }
+
+    // Wait until every event that was published by this handler has been delivered, including events that are published
+    // by the callbacks while waiting
+    public void _awaitDelivery() throws InterruptedException {
+        pending.await();
+    }
+
+    // Wait until every event that was published by any asynchronous handler has been delivered
+    public static void _awaitAll() throws InterruptedException {
+        ALL_PENDING.await();
+    }
+
+    // Wait at most the given time for the events of all handlers, return whether they have all been delivered
+    public static boolean _awaitAll(long timeout, TimeUnit unit) throws InterruptedException {
+        return ALL_PENDING.await(unit.toNanos(timeout));
+    }
+
+    // Queues the events of one subscription, and runs its callback for them on the executor
+    private final class Mailbox<T> implements Consumer<T>, Runnable {
+        private final Consumer<T> callback;
+        private final Queue<Object> events;
+        private final AtomicBoolean scheduled;
+        private final LongAdder dropped;
+
+        private Mailbox(Consumer<T> callback) {
+            this.callback = callback;
+            this.events = capacity == 0 ? new ConcurrentLinkedQueue<>() : new ArrayBlockingQueue<>(capacity);
+            this.scheduled = new AtomicBoolean();
+            this.dropped = new LongAdder();
+        }
+
+        // The event is counted as pending before it can be delivered, and uncounted again if it is dropped
+        @Override
+        public void accept(T event) {
+            pending.increment();
+            ALL_PENDING.increment();
+            if (!enqueue(event == null ? NULL_EVENT : event)) {
+                drop();
+                if (overflow == Overflow.FAIL)
+                    overflowed();
+                return;
+            }
+            schedule();
+        }
+
+        // Add the event to the mailbox, or return false if it is dropped
+        private boolean enqueue(Object event) {
+            if (events.offer(event)) // always succeeds for an unbounded mailbox
+                return true;
+            switch (overflow) {
+                case BLOCK -> {
+                    try {
+                        ((BlockingQueue<Object>) events).put(event);
+                        return true;
+                    } catch (InterruptedException e) { // the event is dropped, the publisher sees the interrupt
+                        Thread.currentThread().interrupt();
+                        return false;
+                    }
+                }
+                case DROP_OLDEST -> {
+                    do {
+                        if (events.poll() != null)
+                            drop();
+                    } while (!events.offer(event));
+                    return true;
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+
+        // Record the exception for this mailbox, which is thrown by failOnOverflow after the fan-out
+        private void overflowed() {
+            IllegalStateException e =
+                    new IllegalStateException("The mailbox of a subscriber is full (capacity " + capacity + ")");
+            IllegalStateException first = overflows.get();
+            if (first == null)
+                overflows.set(e);
+            else
+                first.addSuppressed(e);
+        }
+
+        private void drop() {
+            dropped.increment();
+            _AsyncEventHandler.this.dropped.increment();
+            pending.decrement();
+            ALL_PENDING.decrement();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) { // e.g. a shut down executor, deliver on the publishing thread
+                    run();
+                }
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            Object event;
+            while ((event = events.poll()) != null) {
+                try {
+                    callback.accept(event == NULL_EVENT ? null : (T) event);
+                } catch (Throwable e) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                } finally {
+                    pending.decrement();
+                    ALL_PENDING.decrement();
+                }
+            }
+            scheduled.set(false);
+            if (!events.isEmpty()) { // an event was queued after the last poll but before scheduled was cleared
+                schedule();
+            }
+        }
+    }
+
+    // Counts the events that have been published but not delivered yet
+    static final class Pending {
+        private final AtomicLong count = new AtomicLong();
+
+        void increment() {
+            count.incrementAndGet();
+        }
+
+        long count() {
+            return count.get();
+        }
+
+        void decrement() {
+            if (count.decrementAndGet() == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        synchronized void await() throws InterruptedException {
+            while (count.get() != 0) {
+                wait();
+            }
+        }
+
+        synchronized boolean await(long nanos) throws InterruptedException {
+            long deadline = System.nanoTime() + nanos;
+            while (count.get() != 0) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0)
+                    return false;
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+            return true;
+        }
+    }
+
+    private static void awaitPending() {
+        try {
+            _awaitAll(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // The default executor is only created when a handler without an explicit executor is
+    static final class DefaultExecutor {
+        static final ExecutorService INSTANCE = create();
+
+        private static ExecutorService create() {
+            try {
+                // Executors.newVirtualThreadPerTaskExecutor exists from Java 21, the runtime is compiled for Java 17
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                return Executors.newCachedThreadPool(task -> {
+                    Thread thread = new Thread(task);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package runtime.observers;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// The event handler used for event types that are declared with "latest" (e.g. "publishes latest Snapshot"), for
+// events of which only the latest one matters. It delivers the events on an executor like _AsyncEventHandler, but
+// every subscription has a single pending slot instead of a mailbox: an event that is published while the previous one
+// is still pending replaces it, so a slow subscriber skips to the latest event instead of falling further behind.
+// Memory use per subscriber is bounded, and the replaced events are counted by conflatedEventCount.
+//
+// A batch published with _publishAll is pending as a whole (a batch subscriber receives the latest batch), other
+// subscribers receive the last event of the batch. The pending events are awaited with _awaitDelivery,
+// _AsyncEventHandler._awaitAll and its shutdown hook.
+public final class _ConflatingEventHandler<E> {
+    private static final Object EMPTY = new Object();
+
+    private final _EventHandler<E> slots;
+    private final Executor executor;
+    private final _AsyncEventHandler.Pending pending;
+    private final LongAdder conflated;
+
+    public _ConflatingEventHandler() {
+        this(_AsyncEventHandler.DefaultExecutor.INSTANCE);
+    }
+
+    public _ConflatingEventHandler(Executor executor) {
+        this.slots = new _EventHandler<>();
+        this.executor = Objects.requireNonNull(executor);
+        this.pending = new _AsyncEventHandler.Pending();
+        this.conflated = new LongAdder();
+    }
+
+    // Subscribing again with the same subscriber and callback id replaces the subscription, an event that is already
+    // pending for the old subscription is still delivered to the old callback
+    public void _addSubscriber(Object subInstance, int callbackId, Consumer<E> callback) {
+        slots._addSubscriber(subInstance, callbackId, new Slot<>(Objects.requireNonNull(callback)));
+    }
+
+    public void _addBatchSubscriber(Object subInstance, int callbackId, Consumer<List<E>> callback) {
+        slots._addBatchSubscriber(subInstance, callbackId, new Slot<>(Objects.requireNonNull(callback)));
+    }
+
+    public void _addWeakSubscriber(Object subInstance, int callbackId, Consumer<E> callback) {
+        slots._addWeakSubscriber(subInstance, callbackId, new Slot<>(Objects.requireNonNull(callback)));
+    }
+
+    public void _removeSubscriber(Object subInstance, int callbackId) {
+        slots._removeSubscriber(subInstance, callbackId);
+    }
+
+    public void _publish(E event) {
+        slots._publish(event);
+    }
+
+    public void _publishAll(Collection<? extends E> events) {
+        slots._publishAll(events);
+    }
+
+    public void _publishAll(E[] events) {
+        slots._publishAll(events);
+    }
+
+    public int subscriberCount() {
+        return slots.subscriberCount();
+    }
+
+    public long expungedSubscriberCount() {
+        return slots.expungedSubscriberCount();
+    }
+
+    // The number of events that were replaced by a later event before they were delivered
+    public long conflatedEventCount() {
+        return conflated.sum();
+    }
+
+    // Wait until the pending events of this handler have been delivered, including events that are published by the
+    // callbacks while waiting
+    public void _awaitDelivery() throws InterruptedException {
+        pending.await();
+    }
+
+    // Holds the pending event of one subscription, and runs its callback for it on the executor
+    private final class Slot<T> implements Consumer<T>, Runnable {
+        private final Consumer<T> callback;
+        private final AtomicReference<Object> event;
+        private final AtomicBoolean scheduled;
+
+        private Slot(Consumer<T> callback) {
+            this.callback = callback;
+            this.event = new AtomicReference<>(EMPTY);
+            this.scheduled = new AtomicBoolean();
+        }
+
+        // The event is counted as pending before it can be delivered, if it replaces a pending event it is uncounted
+        // again
+        @Override
+        public void accept(T event) {
+            pending.increment();
+            _AsyncEventHandler.ALL_PENDING.increment();
+            if (this.event.getAndSet(event) != EMPTY) {
+                conflated.increment();
+                pending.decrement();
+                _AsyncEventHandler.ALL_PENDING.decrement();
+                return;
+            }
+            schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                try {
+                    executor.execute(this);
+                } catch (RejectedExecutionException e) { // e.g. a shut down executor, deliver on the publishing thread
+                    run();
+                }
+            }
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public void run() {
+            Object next;
+            while ((next = event.getAndSet(EMPTY)) != EMPTY) {
+                try {
+                    callback.accept((T) next);
+                } catch (Throwable e) {
+                    Thread thread = Thread.currentThread();
+                    thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                } finally {
+                    pending.decrement();
+                    _AsyncEventHandler.ALL_PENDING.decrement();
+                }
+            }
+            scheduled.set(false);
+            if (event.get() != EMPTY) { // an event was published after the last take but before scheduled was cleared
+                schedule();
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package runtime.observers;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+// The subscriptions of a handler that delivers the events on the publishing thread, _EventHandler or
+// _KeyedEventHandler. _AsyncEventHandler keeps the mailboxes of its subscribers in one.
+interface _EventDispatcher<E> {
+    void _addSubscriber(Object subInstance, int callbackId, Consumer<E> callback);
+
+    void _addBatchSubscriber(Object subInstance, int callbackId, Consumer<List<E>> callback);
+
+    void _addWeakSubscriber(Object subInstance, int callbackId, Consumer<E> callback);
+
+    void _removeSubscriber(Object subInstance, int callbackId);
+
+    void _publish(E event);
+
+    void _publishAll(Collection<? extends E> events);
+
+    void _publishAll(E[] events);
+
+    // The callback that was passed when the given subscription was added, or null if there is no such subscription
+    Object subscribedCallback(Object subInstance, int callbackId);
+
+    int subscriberCount();
+
+    // The number of weak subscriptions that have been removed because their subscriber was collected
+    long expungedSubscriberCount();
+}
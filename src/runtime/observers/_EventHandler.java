@@ -1,53 +1,140 @@
 package runtime.observers;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Objects;
 import java.util.function.Consumer;
 
 // The EventHandler class is used by transpiled publisher classes. It manages a collection of subscribers and handles
-// publishing events. The order in which subscribers are notified is undefined.
-public final class _EventHandler<E> {
-    private final Map<Subscriber, Consumer<E>> subscribers;
+// publishing events. The order in which subscribers are notified is undefined. The subscriptions are kept in a
+// copy-on-write array, so publishing doesn't allocate or take a lock, and callbacks may subscribe or unsubscribe while
+// an event is published, see _Subscriptions. Subscribers can also be held weakly.
+//
+// Events can also be published in batches with _publishAll. A batch subscriber receives a batch as one unmodifiable
+// list (and a single event as a list with one element), other subscribers receive the events of a batch one at a time.
+//
+// The event types declared with "keyed", "parallel" and "journaled" have handlers of their own, which keep their
+// subscriptions in an _EventHandler: _KeyedEventHandler, _ParallelEventHandler and _JournaledEventHandler. Events of
+// type int, long and double are published by _IntEventHandler, _LongEventHandler and _DoubleEventHandler instead,
+// which don't box them.
+public final class _EventHandler<E> implements _EventDispatcher<E> {
+    private static final Consumer<?>[] NO_CALLBACKS = new Consumer<?>[0];
+
+    private final _Subscriptions<Consumer<? super E>> subscriptions;
 
     public _EventHandler() {
-        subscribers = new HashMap<>();
+        subscriptions = new _Subscriptions<>(noCallbacks());
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> Consumer<? super E>[] noCallbacks() {
+        return (Consumer<? super E>[]) NO_CALLBACKS;
+    }
+
+    @Override
+    public void _addSubscriber(Object subInstance, int callbackId, Consumer<E> callback) {
+        subscriptions.add(subInstance, callbackId, Objects.requireNonNull(callback));
+    }
+
+    @Override
+    public void _addBatchSubscriber(Object subInstance, int callbackId, Consumer<List<E>> callback) {
+        subscriptions.add(subInstance, callbackId, new BatchCallback<>(Objects.requireNonNull(callback)));
     }
 
-    public void _addSubscriber(Object subInstance, String callbackName, Consumer<E> callback) {
-        subscribers.put(new Subscriber(subInstance, callbackName), callback);
+    // The callback must not refer to the subscriber, see _Subscriptions.addWeak
+    @Override
+    public void _addWeakSubscriber(Object subInstance, int callbackId, Consumer<E> callback) {
+        subscriptions.addWeak(subInstance, callbackId, Objects.requireNonNull(callback));
     }
 
-    public void _removeSubscriber(Object subInstance, String callbackName) {
-        subscribers.remove(new Subscriber(subInstance, callbackName));
+    @Override
+    public void _removeSubscriber(Object subInstance, int callbackId) {
+        subscriptions.remove(subInstance, callbackId);
     }
 
+    @Override
     public void _publish(E event) {
-        for (Consumer<E> callback : subscribers.values()) {
+        deliver(subscriptions.callbacks(), event);
+    }
+
+    // The collection is copied before any callback runs, so callbacks may modify it
+    @Override
+    public void _publishAll(Collection<? extends E> events) {
+        deliverAll(subscriptions.callbacks(), events.toArray(), true);
+    }
+
+    @Override
+    public void _publishAll(E[] events) {
+        deliverAll(subscriptions.callbacks(), events, false);
+    }
+
+    // The callbacks to publish an event to, the array must not be modified
+    Consumer<? super E>[] callbacks() {
+        return subscriptions.callbacks();
+    }
+
+    static <E> void deliver(Consumer<? super E>[] snapshot, E event) {
+        for (Consumer<? super E> callback : snapshot) {
             callback.accept(event);
         }
     }
 
-    public int subscriberCount() {
-        return subscribers.size();
+    // The list of a batch is only created if there is a batch subscriber to receive it
+    static <E> void deliverAll(Consumer<? super E>[] snapshot, Object[] events, boolean owned) {
+        List<E> batch = null;
+        for (Consumer<? super E> callback : snapshot) {
+            if (callback instanceof BatchCallback<?> && batch == null) {
+                batch = batch(events, owned);
+            }
+            deliverAll(callback, events, batch);
+        }
+    }
+
+    // The events are copied before they are passed to a batch callback unless the array is owned by the handler, so
+    // that batch subscribers can keep the list they receive
+    @SuppressWarnings("unchecked")
+    static <E> List<E> batch(Object[] events, boolean owned) {
+        return (List<E>) Collections.unmodifiableList(Arrays.asList(owned ? events : events.clone()));
     }
 
-    private record Subscriber(Object instance, String callbackName) {
-        private Subscriber(Object instance, String callbackName) {
-            this.instance = Objects.requireNonNull(instance);
-            this.callbackName = Objects.requireNonNull(callbackName);
+    @SuppressWarnings("unchecked")
+    static <E> void deliverAll(Consumer<? super E> callback, Object[] events, List<E> batch) {
+        if (callback instanceof BatchCallback<?> batchCallback) {
+            ((BatchCallback<E>) batchCallback).acceptAll(batch);
+        } else {
+            for (Object event : events) {
+                callback.accept((E) event);
+            }
         }
+    }
+
+    @Override
+    public Object subscribedCallback(Object subInstance, int callbackId) {
+        Consumer<? super E> callback = subscriptions.get(subInstance, callbackId);
+        return callback instanceof BatchCallback<?> batchCallback ? batchCallback.callback() : callback;
+    }
 
+    @Override
+    public int subscriberCount() {
+        return subscriptions.count();
+    }
+
+    @Override
+    public long expungedSubscriberCount() {
+        return subscriptions.expungedCount();
+    }
+
+    // Adapts a batch callback to the callback array, single events are delivered as lists with one element
+    private record BatchCallback<E>(Consumer<List<E>> callback) implements Consumer<E> {
         @Override
-        public boolean equals(Object o) {
-            if (this == o) return true;
-            if (o == null || getClass() != o.getClass()) return false;
-            Subscriber that = (Subscriber) o;
-            return instance == that.instance && callbackName.equals(that.callbackName);
+        public void accept(E event) {
+            callback.accept(Collections.singletonList(event));
         }
-        @Override
-        public int hashCode() {
-            return Objects.hash(System.identityHashCode(instance), callbackName);
+
+        void acceptAll(List<E> events) {
+            callback.accept(events);
         }
     }
 }
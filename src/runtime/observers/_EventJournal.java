@@ -0,0 +1,334 @@
+package runtime.observers;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// An append-only log of the events published to a handler, so that subscribers that subscribe later (or after a
+// restart) can replay the events they missed, see _JournaledEventHandler._addReplayingSubscriber. Every event gets an
+// offset, its position in the sequence of all events that were ever appended, and is stored as a record: its Java
+// serialization, preceded by its length. The records are written to memory-mapped segment files in the journal's
+// directory, each named after the offset of its first event. A new segment is started once an event doesn't fit into
+// the last one, and the oldest segments are deleted so that at most maxSegments are kept, which bounds the disk use to
+// maxSegments * segmentSize bytes. Replaying from an offset whose segment was deleted starts at the oldest event that
+// is still kept. Opening an existing journal continues after its last record.
+//
+// Appending an event writes its record into the mapped pages of the segment, which the OS writes back to the file
+// when it chooses to. The pages outlive the process, so a crash of the process loses no appended events, but a crash
+// of the machine loses those whose pages weren't written back yet: force writes them back, which is done by close and,
+// for the journals that are still open, by a shutdown hook when the JVM exits normally. Nothing forces the pages after
+// each event. The length of a record is written after its contents, so that a record that wasn't written completely is
+// ignored.
+//
+// The journal of a directory is shared by the handlers that journal to it, e.g. the publishers of a journaled type
+// that have no key, or the same key, for their journal. A journal is thread safe, appending and reading take its
+// lock. The events are serialized before the lock is taken, see record.
+public final class _EventJournal<E> implements AutoCloseable {
+    public static final int DEFAULT_SEGMENT_SIZE = 1 << 24; // 16 MiB
+    public static final int DEFAULT_MAX_SEGMENTS = 8;
+    private static final int MIN_SEGMENT_SIZE = 256;
+    private static final String SUFFIX = ".journal";
+    private static final Map<Path, _EventJournal<?>> OPEN = new HashMap<>(); // guarded by itself
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(_EventJournal::forceAll));
+    }
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int maxSegments;
+    private final List<Segment> segments; // oldest first, events are appended to the last one
+    private long nextOffset;
+    private volatile boolean closed;
+
+    private _EventJournal(Path directory, int segmentSize, int maxSegments) {
+        if (segmentSize < MIN_SEGMENT_SIZE)
+            throw new IllegalArgumentException("The segment size must be at least " + MIN_SEGMENT_SIZE +
+                                               " bytes, got " + segmentSize);
+        if (maxSegments < 1)
+            throw new IllegalArgumentException("The number of segments must be positive, got " + maxSegments);
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maxSegments = maxSegments;
+        this.segments = new ArrayList<>();
+        try {
+            Files.createDirectories(directory);
+            List<Long> offsets = new ArrayList<>();
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SUFFIX)) {
+                for (Path file : files) {
+                    String name = file.getFileName().toString();
+                    try {
+                        offsets.add(Long.parseLong(name.substring(0, name.length() - SUFFIX.length())));
+                    } catch (NumberFormatException e) { // not a segment
+                    }
+                }
+            }
+            offsets.sort(null);
+            for (long firstOffset : offsets) {
+                segments.add(new Segment(file(firstOffset), firstOffset, 0));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (!segments.isEmpty()) { // find the end of the last segment
+            Segment last = segments.get(segments.size() - 1);
+            int count = 0;
+            int length;
+            while ((length = last.lengthAt(last.end)) > 0) {
+                last.end += Integer.BYTES + length;
+                count++;
+            }
+            nextOffset = last.firstOffset + count;
+        }
+    }
+
+    // The journal in the given directory, which is created if it doesn't exist. A directory's journal is only opened
+    // once per process, the handlers that journal to the same directory share it.
+    @SuppressWarnings("unchecked")
+    public static <E> _EventJournal<E> open(Path directory, int segmentSize, int maxSegments) {
+        Path path = directory.toAbsolutePath().normalize();
+        synchronized (OPEN) {
+            _EventJournal<?> journal = OPEN.get(path);
+            if (journal == null || journal.closed) {
+                journal = new _EventJournal<>(path, segmentSize, maxSegments);
+                OPEN.put(path, journal);
+            } else if (journal.segmentSize != segmentSize || journal.maxSegments != maxSegments) {
+                throw new IllegalStateException("The journal in " + path + " is already open with other limits");
+            }
+            return (_EventJournal<E>) journal;
+        }
+    }
+
+    public static <E> _EventJournal<E> open(Path directory) {
+        return open(directory, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    // Returns the offset of the event. The event is appended before it's published, so an event that can't be
+    // serialized isn't delivered either.
+    public long append(E event) {
+        return appendRecord(record(event));
+    }
+
+    // The record of an event, which is appended with appendRecord. Serializing the event doesn't take the journal's
+    // lock, so that the handler only holds the lock while the record is copied into the segment.
+    public byte[] record(E event) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(event);
+        } catch (NotSerializableException e) {
+            throw new IllegalArgumentException("Events of type " + e.getMessage() + " can't be journaled", e);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    // Returns the offset of the event of the record
+    public synchronized long appendRecord(byte[] record) {
+        ensureOpen();
+        if (Integer.BYTES + record.length > segmentSize)
+            throw new IllegalArgumentException("An event of " + record.length + " bytes doesn't fit into a " +
+                                               "segment of " + segmentSize + " bytes");
+        Segment segment = segments.isEmpty() ? null : segments.get(segments.size() - 1);
+        if (segment == null || segment.end + Integer.BYTES + record.length > segment.buffer.capacity())
+            segment = roll();
+        segment.buffer.put(segment.end + Integer.BYTES, record);
+        segment.buffer.putInt(segment.end, record.length);
+        segment.end += Integer.BYTES + record.length;
+        return nextOffset++;
+    }
+
+    // The offset of the oldest event that is still kept
+    public synchronized long firstOffset() {
+        return segments.isEmpty() ? nextOffset : segments.get(0).firstOffset;
+    }
+
+    // The offset that the next event will get
+    public synchronized long nextOffset() {
+        return nextOffset;
+    }
+
+    // A reader of the events from the given offset on, an offset after the last event reads the events that are
+    // appended from now on
+    public synchronized Reader reader(long offset) {
+        if (offset < 0)
+            throw new IllegalArgumentException("The offset must not be negative, got " + offset);
+        return new Reader(Math.min(offset, nextOffset));
+    }
+
+    // Writes the segments to their files
+    public synchronized void force() {
+        if (!closed)
+            segments.forEach(segment -> segment.buffer.force());
+    }
+
+    // Writes the segments to their files, the journal can't be used afterwards
+    @Override
+    public synchronized void close() {
+        if (closed)
+            return;
+        force();
+        closed = true;
+        synchronized (OPEN) {
+            OPEN.remove(directory, this);
+        }
+    }
+
+    // The journals stay usable, events that are appended after their pages were forced may be lost with the machine
+    private static void forceAll() {
+        List<_EventJournal<?>> journals;
+        synchronized (OPEN) {
+            journals = new ArrayList<>(OPEN.values());
+        }
+        journals.forEach(_EventJournal::force);
+    }
+
+    private void ensureOpen() {
+        if (closed)
+            throw new IllegalStateException("The journal in " + directory + " is closed");
+    }
+
+    // Start a new segment, and delete the oldest ones if there are too many. A last segment without records (e.g. one
+    // of a journal with a smaller segment size) would have the same file, so it's replaced.
+    private Segment roll() {
+        if (!segments.isEmpty() && segments.get(segments.size() - 1).end == 0)
+            segments.remove(segments.size() - 1).delete();
+        Segment segment;
+        try {
+            segment = new Segment(file(nextOffset), nextOffset, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segments.add(segment);
+        while (segments.size() > maxSegments) {
+            segments.remove(0).delete();
+        }
+        return segment;
+    }
+
+    private Path file(long firstOffset) {
+        return directory.resolve("%020d%s".formatted(firstOffset, SUFFIX));
+    }
+
+    @SuppressWarnings("unchecked")
+    private E deserialize(byte[] record) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(record))) {
+            return (E) in.readObject();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("The journal in " + directory + " contains events of an unknown type", e);
+        }
+    }
+
+    // Reads the events of the journal in order. Reading the events of a deleted segment skips to the oldest event that
+    // is still kept.
+    public final class Reader {
+        private long offset; // of the next event to read
+        private Segment segment; // null until the segment of the offset has been looked up
+        private int position; // of the next event's record in the segment
+
+        private Reader(long offset) {
+            this.offset = offset;
+        }
+
+        public long offset() {
+            synchronized (_EventJournal.this) {
+                return offset;
+            }
+        }
+
+        // Adds up to max of the next events to the list, and returns how many. The records are copied while holding
+        // the journal's lock, but deserialized after releasing it.
+        public int read(int max, List<? super E> events) {
+            List<byte[]> records = new ArrayList<>(Math.min(max, 64));
+            synchronized (_EventJournal.this) {
+                ensureOpen();
+                if (segment == null || segment.deleted)
+                    seek();
+                while (records.size() < max && offset < nextOffset) {
+                    int length = segment.lengthAt(position);
+                    if (length == 0) { // the rest of the segment is empty, the next event is in the next segment
+                        segment = segments.get(segments.indexOf(segment) + 1);
+                        position = 0;
+                        continue;
+                    }
+                    byte[] record = new byte[length];
+                    segment.buffer.get(position + Integer.BYTES, record);
+                    records.add(record);
+                    position += Integer.BYTES + length;
+                    offset++;
+                }
+            }
+            for (byte[] record : records) {
+                events.add(deserialize(record));
+            }
+            return records.size();
+        }
+
+        // Find the record of the offset, or of the oldest event if that segment was deleted
+        private void seek() {
+            position = 0;
+            if (segments.isEmpty() || offset < segments.get(0).firstOffset) {
+                segment = segments.isEmpty() ? null : segments.get(0);
+                offset = segment == null ? offset : segment.firstOffset;
+                return;
+            }
+            int i = segments.size() - 1;
+            while (segments.get(i).firstOffset > offset) {
+                i--;
+            }
+            segment = segments.get(i);
+            for (long skipped = segment.firstOffset; skipped < offset; skipped++) {
+                position += Integer.BYTES + segment.lengthAt(position);
+            }
+        }
+    }
+
+    private static final class Segment {
+        private final Path file;
+        private final long firstOffset;
+        private final MappedByteBuffer buffer;
+        private int end; // where the next record is written
+        private boolean deleted;
+
+        // A new segment of the given size, or the existing segment in the file if size is 0
+        private Segment(Path file, long firstOffset, int size) throws IOException {
+            this.file = file;
+            this.firstOffset = firstOffset;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                                        StandardOpenOption.WRITE)) {
+                this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size == 0 ? channel.size() : size);
+            }
+        }
+
+        // The length of the record at the given position, or 0 if there is none
+        private int lengthAt(int position) {
+            return position + Integer.BYTES > buffer.capacity() ? 0 : buffer.getInt(position);
+        }
+
+        // The mapping stays valid until the buffer is collected, readers skip the segment once it's deleted
+        private void delete() {
+            deleted = true;
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
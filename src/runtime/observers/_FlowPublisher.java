@@ -0,0 +1,128 @@
+package runtime.observers;
+
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+// A java.util.concurrent.Flow.Publisher of the events of one event type of a publisher, so that publishers can be used
+// in reactive pipelines that signal demand. Transpiled publishers return one from e.g. _asTradeFlowPublisher. Every
+// Flow subscription subscribes to the publisher with a callback that buffers the events, and calls the subscriber's
+// onNext for as many of the buffered events as it has requested. The events are delivered by the thread that publishes
+// them or that requests them, one at a time, and a subscriber receives the events that are published after it
+// subscribed in the order they were published.
+//
+// Publishing never waits for a subscriber: an event that doesn't fit into the full buffer of a subscription fails it,
+// the subscriber receives onError with an IllegalStateException after the events it requested, and is cancelled. Flow
+// doesn't allow null items, so null events are skipped. Publishers never complete, so subscribers don't receive
+// onComplete.
+public final class _FlowPublisher<E> implements Flow.Publisher<E> {
+    private final BiConsumer<Object, Consumer<E>> subscribe;
+    private final Consumer<Object> unsubscribe;
+    private final int bufferSize;
+
+    // subscribe adds the callback of a subscription to the publisher with the subscription as the subscriber, and
+    // unsubscribe removes it
+    public _FlowPublisher(BiConsumer<Object, Consumer<E>> subscribe, Consumer<Object> unsubscribe) {
+        this(subscribe, unsubscribe, Flow.defaultBufferSize());
+    }
+
+    public _FlowPublisher(BiConsumer<Object, Consumer<E>> subscribe, Consumer<Object> unsubscribe, int bufferSize) {
+        if (bufferSize < 1)
+            throw new IllegalArgumentException("The buffer size must be positive, got " + bufferSize);
+        this.subscribe = Objects.requireNonNull(subscribe);
+        this.unsubscribe = Objects.requireNonNull(unsubscribe);
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super E> subscriber) {
+        FlowSubscription subscription = new FlowSubscription(Objects.requireNonNull(subscriber));
+        subscriber.onSubscribe(subscription);
+        if (subscription.cancelled)
+            return;
+        subscribe.accept(subscription, subscription);
+        if (subscription.cancelled) // cancelled by another thread before it was subscribed
+            unsubscribe.accept(subscription);
+    }
+
+    private final class FlowSubscription implements Flow.Subscription, Consumer<E> {
+        private final Flow.Subscriber<? super E> subscriber;
+        private final Queue<E> buffer;
+        private final AtomicLong requested;
+        private final AtomicInteger drains; // only the thread that raises it from 0 delivers, the others leave it more
+        private volatile boolean cancelled;
+        private volatile Throwable error; // e.g. for a request that isn't positive or an overflow, signalled by drain
+
+        private FlowSubscription(Flow.Subscriber<? super E> subscriber) {
+            this.subscriber = subscriber;
+            this.buffer = new ArrayBlockingQueue<>(bufferSize);
+            this.requested = new AtomicLong();
+            this.drains = new AtomicInteger();
+        }
+
+        // The callback that the publisher calls for each event
+        @Override
+        public void accept(E event) {
+            if (event == null || cancelled)
+                return;
+            if (!buffer.offer(event) && error == null)
+                error = new IllegalStateException("The subscriber fell " + bufferSize + " events behind the " +
+                                                  "publisher, it must request more events");
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                error = new IllegalArgumentException("The number of requested events must be positive, got " + n);
+            } else {
+                requested.accumulateAndGet(n, (r, m) -> r + m < 0 ? Long.MAX_VALUE : r + m); // unbounded on overflow
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            if (cancelled)
+                return;
+            cancelled = true;
+            unsubscribe.accept(this);
+            buffer.clear();
+        }
+
+        // Deliver the buffered events that have been requested. Drains that start while another thread delivers are
+        // counted, and that thread delivers again for them, so that onNext is never called concurrently.
+        private void drain() {
+            if (drains.getAndIncrement() != 0)
+                return;
+            int missed = 1;
+            do {
+                long limit = requested.get();
+                long emitted = 0;
+                E event;
+                while (!cancelled && emitted < limit && (event = buffer.poll()) != null) {
+                    emitted++;
+                    try {
+                        subscriber.onNext(event);
+                    } catch (Throwable e) { // a subscriber that throws is cancelled
+                        cancel();
+                        Thread thread = Thread.currentThread();
+                        thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+                    }
+                }
+                if (emitted > 0 && limit != Long.MAX_VALUE)
+                    requested.addAndGet(-emitted);
+                if (error != null && !cancelled) {
+                    cancel();
+                    subscriber.onError(error);
+                }
+                missed = drains.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package runtime.observers;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+// The event handler for int events. It works like _EventHandler, but passes the events to IntConsumer callbacks
+// so that they are never boxed. Only batch subscribers receive boxed events, since they receive a List.
+public final class _IntEventHandler {
+    private static final IntConsumer[] NO_CALLBACKS = new IntConsumer[0];
+
+    private final _Subscriptions<IntConsumer> subscriptions;
+
+    public _IntEventHandler() {
+        subscriptions = new _Subscriptions<>(NO_CALLBACKS);
+    }
+
+    public void _addSubscriber(Object subInstance, int callbackId, IntConsumer callback) {
+        subscriptions.add(subInstance, callbackId, Objects.requireNonNull(callback));
+    }
+
+    public void _addBatchSubscriber(Object subInstance, int callbackId, Consumer<List<Integer>> callback) {
+        subscriptions.add(subInstance, callbackId, new BatchCallback(Objects.requireNonNull(callback)));
+    }
+
+    // The callback must not refer to the subscriber, see _Subscriptions.addWeak
+    public void _addWeakSubscriber(Object subInstance, int callbackId, IntConsumer callback) {
+        subscriptions.addWeak(subInstance, callbackId, Objects.requireNonNull(callback));
+    }
+
+    public void _removeSubscriber(Object subInstance, int callbackId) {
+        subscriptions.remove(subInstance, callbackId);
+    }
+
+    public void _publish(int event) {
+        IntConsumer[] snapshot = subscriptions.callbacks();
+        for (IntConsumer callback : snapshot) {
+            callback.accept(event);
+        }
+    }
+
+    // The events are boxed into a new list for the batch subscribers, so they can keep the list they receive
+    public void _publishAll(int[] events) {
+        IntConsumer[] snapshot = subscriptions.callbacks();
+        List<Integer> batch = null;
+        for (IntConsumer callback : snapshot) {
+            if (callback instanceof BatchCallback batchCallback) {
+                if (batch == null) {
+                    batch = Arrays.stream(events).boxed().toList();
+                }
+                batchCallback.acceptAll(batch);
+            } else {
+                for (int event : events) {
+                    callback.accept(event);
+                }
+            }
+        }
+    }
+
+    public void _publishAll(Integer[] events) {
+        int[] unboxed = new int[events.length];
+        for (int i = 0; i < events.length; i++) {
+            unboxed[i] = events[i];
+        }
+        _publishAll(unboxed);
+    }
+
+    public int subscriberCount() {
+        return subscriptions.count();
+    }
+
+    // The number of weak subscriptions that have been removed because their subscriber was collected
+    public long expungedSubscriberCount() {
+        return subscriptions.expungedCount();
+    }
+
+    // Adapts a batch callback to the callback array, single events are delivered as lists with one element
+    private record BatchCallback(Consumer<List<Integer>> callback) implements IntConsumer {
+        @Override
+        public void accept(int event) {
+            callback.accept(Collections.singletonList(event));
+        }
+
+        void acceptAll(List<Integer> events) {
+            callback.accept(events);
+        }
+    }
+}
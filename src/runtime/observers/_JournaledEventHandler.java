@@ -0,0 +1,110 @@
+package runtime.observers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+// The event handler for event types that are declared with "journaled" (e.g. "publishes journaled("trades") Trade").
+// It appends the events to an _EventJournal before it publishes them, even while it has no subscribers. A replaying
+// subscriber first receives the journaled events from the given offset on, and then the events that are published
+// after it has caught up, without missing or repeating one: appending an event and taking the snapshot of the
+// subscribers it's delivered to is done under the journal's lock, and the subscriber is added under that lock once it
+// has replayed every journaled event. The events are replayed on the subscribing thread, in batches that are read while
+// holding the lock and delivered after releasing it, so publishing only waits for the reads. The subscriptions are
+// held by an _EventHandler.
+public final class _JournaledEventHandler<E> {
+    private static final int REPLAY_BATCH_SIZE = 256;
+
+    private final _EventHandler<E> subscriptions;
+    private final _EventJournal<E> journal;
+
+    public _JournaledEventHandler(_EventJournal<E> journal) {
+        this.subscriptions = new _EventHandler<>();
+        this.journal = Objects.requireNonNull(journal);
+    }
+
+    public void _addSubscriber(Object subInstance, int callbackId, Consumer<E> callback) {
+        subscriptions._addSubscriber(subInstance, callbackId, callback);
+    }
+
+    public void _addBatchSubscriber(Object subInstance, int callbackId, Consumer<List<E>> callback) {
+        subscriptions._addBatchSubscriber(subInstance, callbackId, callback);
+    }
+
+    // The callback must not refer to the subscriber, see _Subscriptions.addWeak
+    public void _addWeakSubscriber(Object subInstance, int callbackId, Consumer<E> callback) {
+        subscriptions._addWeakSubscriber(subInstance, callbackId, callback);
+    }
+
+    // The subscriber first receives the journaled events from the given offset on, see _EventJournal.reader, and then
+    // the events that are published. Returns once it has caught up, so it may not return while events are published
+    // faster than they are replayed.
+    public void _addReplayingSubscriber(Object subInstance, int callbackId, long offset, Consumer<E> callback) {
+        Objects.requireNonNull(subInstance);
+        Objects.requireNonNull(callback);
+        _EventJournal<E>.Reader reader = journal.reader(offset);
+        List<E> events = new ArrayList<>();
+        while (true) {
+            synchronized (journal) {
+                if (reader.offset() == journal.nextOffset()) { // the next events are delivered live
+                    subscriptions._addSubscriber(subInstance, callbackId, callback);
+                    return;
+                }
+            }
+            reader.read(REPLAY_BATCH_SIZE, events);
+            events.forEach(callback);
+            events.clear();
+        }
+    }
+
+    public void _removeSubscriber(Object subInstance, int callbackId) {
+        subscriptions._removeSubscriber(subInstance, callbackId);
+    }
+
+    // The event is serialized before taking the lock
+    public void _publish(E event) {
+        byte[] record = journal.record(event);
+        Consumer<? super E>[] snapshot;
+        synchronized (journal) {
+            journal.appendRecord(record);
+            snapshot = subscriptions.callbacks();
+        }
+        _EventHandler.deliver(snapshot, event);
+    }
+
+    // The collection is copied before any callback runs, so callbacks may modify it
+    public void _publishAll(Collection<? extends E> events) {
+        publishAll(events.toArray(), true);
+    }
+
+    public void _publishAll(E[] events) {
+        publishAll(events, false);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void publishAll(Object[] events, boolean owned) {
+        byte[][] records = new byte[events.length][];
+        for (int i = 0; i < events.length; i++) {
+            records[i] = journal.record((E) events[i]);
+        }
+        Consumer<? super E>[] snapshot;
+        synchronized (journal) {
+            for (byte[] record : records) {
+                journal.appendRecord(record);
+            }
+            snapshot = subscriptions.callbacks();
+        }
+        _EventHandler.deliverAll(snapshot, events, owned);
+    }
+
+    public int subscriberCount() {
+        return subscriptions.subscriberCount();
+    }
+
+    // The number of weak subscriptions that have been removed because their subscriber was collected
+    public long expungedSubscriberCount() {
+        return subscriptions.expungedSubscriberCount();
+    }
+}
@@ -0,0 +1,137 @@
+package runtime.observers;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+// The event handler for event types that are declared with "keyed" (e.g. "publishes keyed(symbol) Trade"). The events
+// have a key, which is returned by the handler's key function. A keyed subscriber only receives the events with the key
+// it subscribed with: the keyed subscriptions are indexed by key, so an event is only dispatched to the subscribers of
+// its key instead of every subscriber checking the key itself. The other subscribers receive every event like those of
+// an _EventHandler, which holds them. A subscriber is subscribed either to all events or to the events with one key,
+// subscribing again replaces the subscription.
+public final class _KeyedEventHandler<E> implements _EventDispatcher<E> {
+    private static final Consumer<?>[] NO_CALLBACKS = new Consumer<?>[0];
+
+    private final Function<? super E, ?> keyOf;
+    private final _EventHandler<E> unkeyed; // the subscriptions to all events
+    private final Map<Object, _Subscriptions<Consumer<? super E>>> keyed; // the keyed subscriptions of each key
+    private final _SubscriberMap<Object> keys; // the key of each keyed subscription
+
+    public _KeyedEventHandler(Function<? super E, ?> keyOf) {
+        this.keyOf = Objects.requireNonNull(keyOf);
+        this.unkeyed = new _EventHandler<>();
+        this.keyed = new ConcurrentHashMap<>();
+        this.keys = new _SubscriberMap<>();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E> Consumer<? super E>[] noCallbacks() {
+        return (Consumer<? super E>[]) NO_CALLBACKS;
+    }
+
+    @Override
+    public synchronized void _addSubscriber(Object subInstance, int callbackId, Consumer<E> callback) {
+        unkey(subInstance, callbackId);
+        unkeyed._addSubscriber(subInstance, callbackId, callback);
+    }
+
+    @Override
+    public synchronized void _addBatchSubscriber(Object subInstance, int callbackId, Consumer<List<E>> callback) {
+        unkey(subInstance, callbackId);
+        unkeyed._addBatchSubscriber(subInstance, callbackId, callback);
+    }
+
+    @Override
+    public synchronized void _addWeakSubscriber(Object subInstance, int callbackId, Consumer<E> callback) {
+        unkey(subInstance, callbackId);
+        unkeyed._addWeakSubscriber(subInstance, callbackId, callback);
+    }
+
+    // The subscriber only receives the events whose key equals the given key
+    public synchronized void _addKeyedSubscriber(Object subInstance, int callbackId, Object key,
+                                                 Consumer<E> callback) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(callback);
+        unkeyed._removeSubscriber(subInstance, callbackId);
+        unkey(subInstance, callbackId);
+        keyed.computeIfAbsent(key, k -> new _Subscriptions<>(noCallbacks())).add(subInstance, callbackId, callback);
+        keys.put(subInstance, callbackId, key);
+    }
+
+    @Override
+    public synchronized void _removeSubscriber(Object subInstance, int callbackId) {
+        unkey(subInstance, callbackId);
+        unkeyed._removeSubscriber(subInstance, callbackId);
+    }
+
+    // Remove the keyed subscription of the subscriber if it has one, and the subscriptions of its key if it was the
+    // last one
+    private void unkey(Object subInstance, int callbackId) {
+        if (keys.isEmpty())
+            return;
+        Object key = keys.remove(subInstance, callbackId);
+        if (key == null)
+            return;
+        _Subscriptions<Consumer<? super E>> subscribers = keyed.get(key);
+        subscribers.remove(subInstance, callbackId);
+        if (subscribers.count() == 0)
+            keyed.remove(key);
+    }
+
+    @Override
+    public void _publish(E event) {
+        unkeyed._publish(event);
+        publishKeyed(event);
+    }
+
+    // Only the subscribers of the event's key are looked up, a null event has no key
+    private void publishKeyed(E event) {
+        Object key = event == null ? null : keyOf.apply(event);
+        _Subscriptions<Consumer<? super E>> subscribers = key == null ? null : keyed.get(key);
+        if (subscribers == null)
+            return;
+        _EventHandler.deliver(subscribers.callbacks(), event);
+    }
+
+    // The collection is copied before any callback runs, so callbacks may modify it
+    @Override
+    @SuppressWarnings("unchecked")
+    public void _publishAll(Collection<? extends E> events) {
+        Object[] copy = events.toArray();
+        _EventHandler.deliverAll(unkeyed.callbacks(), copy, true);
+        for (Object event : copy) {
+            publishKeyed((E) event);
+        }
+    }
+
+    @Override
+    public void _publishAll(E[] events) {
+        unkeyed._publishAll(events);
+        for (E event : events) {
+            publishKeyed(event);
+        }
+    }
+
+    @Override
+    public synchronized Object subscribedCallback(Object subInstance, int callbackId) {
+        Object key = keys.get(subInstance, callbackId);
+        if (key != null)
+            return keyed.get(key).get(subInstance, callbackId);
+        return unkeyed.subscribedCallback(subInstance, callbackId);
+    }
+
+    @Override
+    public synchronized int subscriberCount() {
+        return unkeyed.subscriberCount() + keys.size();
+    }
+
+    @Override
+    public long expungedSubscriberCount() {
+        return unkeyed.expungedSubscriberCount();
+    }
+}
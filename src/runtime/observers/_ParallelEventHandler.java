@@ -0,0 +1,164 @@
+package runtime.observers;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+// The event handler for event types that are declared with "parallel" (e.g. "publishes parallel(10000) Tick"). Once
+// it has at least the parallel threshold of subscribers, an event is delivered to them in parallel: the callbacks are
+// split into chunks, which are run by tasks on an executor (the common ForkJoinPool by default) while the publishing
+// thread runs the first chunk, and _publish returns once all of them have been delivered. _publishInParallel instead
+// returns a future that completes then. The callbacks of such a handler may therefore run concurrently and on other
+// threads. An exception thrown by a callback stops the delivery of its chunk, and is rethrown once the other chunks are
+// done. With fewer subscribers the events are delivered one at a time on the publishing thread, like by the
+// _EventHandler that holds the subscriptions.
+public final class _ParallelEventHandler<E> {
+    public static final int DEFAULT_PARALLEL_THRESHOLD = 4096;
+    private static final int MIN_CHUNK_SIZE = 256; // so that a chunk is worth handing to another thread
+
+    private final _EventHandler<E> subscriptions;
+    private final int parallelThreshold;
+    private final Executor executor; // runs the chunks of a parallel delivery
+
+    public _ParallelEventHandler() {
+        this(DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    public _ParallelEventHandler(int parallelThreshold) {
+        this(parallelThreshold, ForkJoinPool.commonPool());
+    }
+
+    public _ParallelEventHandler(int parallelThreshold, Executor executor) {
+        if (parallelThreshold < 1)
+            throw new IllegalArgumentException("The parallel threshold must be positive, got " + parallelThreshold);
+        this.subscriptions = new _EventHandler<>();
+        this.parallelThreshold = parallelThreshold;
+        this.executor = Objects.requireNonNull(executor);
+    }
+
+    public void _addSubscriber(Object subInstance, int callbackId, Consumer<E> callback) {
+        subscriptions._addSubscriber(subInstance, callbackId, callback);
+    }
+
+    public void _addBatchSubscriber(Object subInstance, int callbackId, Consumer<List<E>> callback) {
+        subscriptions._addBatchSubscriber(subInstance, callbackId, callback);
+    }
+
+    // The callback must not refer to the subscriber, see _Subscriptions.addWeak
+    public void _addWeakSubscriber(Object subInstance, int callbackId, Consumer<E> callback) {
+        subscriptions._addWeakSubscriber(subInstance, callbackId, callback);
+    }
+
+    public void _removeSubscriber(Object subInstance, int callbackId) {
+        subscriptions._removeSubscriber(subInstance, callbackId);
+    }
+
+    public void _publish(E event) {
+        Consumer<? super E>[] snapshot = subscriptions.callbacks();
+        if (snapshot.length >= parallelThreshold) {
+            deliverInParallel(snapshot, callback -> callback.accept(event));
+        } else {
+            _EventHandler.deliver(snapshot, event);
+        }
+    }
+
+    // Returns once the event has been delivered on the publishing thread if the handler has fewer subscribers than the
+    // parallel threshold
+    public CompletableFuture<Void> _publishInParallel(E event) {
+        Consumer<? super E>[] snapshot = subscriptions.callbacks();
+        if (snapshot.length < parallelThreshold) {
+            _EventHandler.deliver(snapshot, event);
+            return CompletableFuture.completedFuture(null);
+        }
+        return fork(snapshot, 0, callback -> callback.accept(event));
+    }
+
+    // The collection is copied before any callback runs, so callbacks may modify it
+    public void _publishAll(Collection<? extends E> events) {
+        publishAll(events.toArray(), true);
+    }
+
+    public void _publishAll(E[] events) {
+        publishAll(events, false);
+    }
+
+    private void publishAll(Object[] events, boolean owned) {
+        Consumer<? super E>[] snapshot = subscriptions.callbacks();
+        if (snapshot.length >= parallelThreshold) {
+            List<E> batch = _EventHandler.batch(events, owned);
+            deliverInParallel(snapshot, callback -> _EventHandler.deliverAll(callback, events, batch));
+        } else {
+            _EventHandler.deliverAll(snapshot, events, owned);
+        }
+    }
+
+    // The publishing thread delivers the first chunk while the executor delivers the others, the first exception that
+    // was thrown is rethrown once all chunks are done
+    private void deliverInParallel(Consumer<? super E>[] snapshot, Consumer<Consumer<? super E>> delivery) {
+        CompletableFuture<Void> forked = fork(snapshot, 1, delivery);
+        Throwable failure = null;
+        try {
+            deliver(snapshot, 0, Math.min(chunkSize(snapshot.length), snapshot.length), delivery);
+        } catch (Throwable e) {
+            failure = e;
+        }
+        try {
+            forked.join();
+        } catch (CompletionException e) {
+            if (failure == null) {
+                failure = e.getCause();
+            } else {
+                failure.addSuppressed(e.getCause());
+            }
+        }
+        if (failure instanceof RuntimeException e)
+            throw e;
+        if (failure instanceof Error e)
+            throw e;
+        if (failure != null)
+            throw new CompletionException(failure);
+    }
+
+    // Run the chunks of the callbacks from the given chunk on, each by a task on the executor
+    private CompletableFuture<Void> fork(Consumer<? super E>[] snapshot, int firstChunk,
+                                         Consumer<Consumer<? super E>> delivery) {
+        int chunkSize = chunkSize(snapshot.length);
+        int chunks = (snapshot.length + chunkSize - 1) / chunkSize;
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[Math.max(chunks - firstChunk, 0)];
+        for (int i = 0; i < tasks.length; i++) {
+            int from = (firstChunk + i) * chunkSize;
+            int to = Math.min(from + chunkSize, snapshot.length);
+            tasks[i] = CompletableFuture.runAsync(() -> deliver(snapshot, from, to, delivery), executor);
+        }
+        return CompletableFuture.allOf(tasks);
+    }
+
+    // About four chunks per thread (including the publishing thread), so that a slow chunk doesn't hold up the others
+    // for long
+    private int chunkSize(int callbacks) {
+        int threads = 1 + (executor instanceof ForkJoinPool pool ? pool.getParallelism()
+                                                                 : Runtime.getRuntime().availableProcessors());
+        return Math.max(MIN_CHUNK_SIZE, (callbacks + 4 * threads - 1) / (4 * threads));
+    }
+
+    private static <E> void deliver(Consumer<? super E>[] snapshot, int from, int to,
+                                    Consumer<Consumer<? super E>> delivery) {
+        for (int i = from; i < to; i++) {
+            delivery.accept(snapshot[i]);
+        }
+    }
+
+    public int subscriberCount() {
+        return subscriptions.subscriberCount();
+    }
+
+    // The number of weak subscriptions that have been removed because their subscriber was collected
+    public long expungedSubscriberCount() {
+        return subscriptions.expungedSubscriberCount();
+    }
+}
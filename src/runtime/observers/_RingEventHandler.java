@@ -0,0 +1,483 @@
+package runtime.observers;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+// The event handler used for event types that are declared with "ring" (e.g. "publishes ring(yield, 4096) Tick"). The
+// events are passed through a preallocated ring of slots whose size is a power of two, in the style of the LMAX
+// disruptor. Every subscriber has a consumer thread that follows the publishers through the ring and records its
+// progress in a sequence counter:
+//  - publishing claims the next sequence with a single atomic increment, stores the event in its slot and marks the
+//    slot as published. It doesn't lock or allocate, and only waits when the ring is full, i.e. when the slowest
+//    subscriber is a whole ring behind
+//  - a consumer thread delivers every event that has been published since its last pass in one go, a batch subscriber
+//    receives them as one list
+//  - each subscriber receives the events in the order of their sequences, which is the publishing order for a single
+//    publishing thread
+// Consumers wait for events according to the wait strategy, while publishers that wait for a full ring always back off
+// like PARK, so that they don't take the CPU from the consumers they are waiting for. Events that are published while
+// there are no subscribers are dropped, and a new subscriber receives the events that are published after it
+// subscribed. The events that have been published but not delivered yet are awaited with _awaitDelivery, and by a
+// shutdown hook for at most _AsyncEventHandler.SHUTDOWN_TIMEOUT_MILLIS in total. Publishing from a callback can block
+// forever if the ring is full, since the subscriber then waits for itself. The consumer of a weak subscription is
+// stopped once its subscriber has been collected, which is noticed when publishing or subscribing.
+public final class _RingEventHandler<E> {
+    public static final int DEFAULT_CAPACITY = 1024;
+    private static final Object NULL_EVENT = new Object(); // distinguishes published null events from empty slots
+    private static final Set<_RingEventHandler<?>> HANDLERS = Collections.newSetFromMap(new WeakHashMap<>());
+
+    static {
+        Runtime.getRuntime().addShutdownHook(new Thread(_RingEventHandler::awaitAll));
+    }
+
+    private final Object[] slots;
+    private final AtomicIntegerArray rounds; // the round (sequence / capacity) of the event published in each slot
+    private final int mask;
+    private final int roundShift;
+    private final WaitStrategy waitStrategy;
+    private final Sequence claimed;
+    private volatile Group group;
+    private final _SubscriberMap<RingConsumer<E>> subscriptions;
+    private final Map<_WeakSubscriber, RingConsumer<E>> weakSubscriptions;
+    private final ReferenceQueue<Object> collected;
+    private volatile long expunged;
+
+    public _RingEventHandler() {
+        this(DEFAULT_CAPACITY, WaitStrategy.PARK);
+    }
+
+    public _RingEventHandler(int capacity, WaitStrategy waitStrategy) {
+        if (capacity < 2 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("The capacity of a ring must be a power of two, got " + capacity);
+        this.slots = new Object[capacity];
+        this.rounds = new AtomicIntegerArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            rounds.set(i, -1);
+        }
+        this.mask = capacity - 1;
+        this.roundShift = Integer.numberOfTrailingZeros(capacity);
+        this.waitStrategy = Objects.requireNonNull(waitStrategy);
+        this.claimed = new Sequence(-1);
+        this.group = new Group(new RingConsumer<?>[0]);
+        this.subscriptions = new _SubscriberMap<>();
+        this.weakSubscriptions = new HashMap<>();
+        this.collected = new ReferenceQueue<>();
+        synchronized (HANDLERS) {
+            HANDLERS.add(this);
+        }
+    }
+
+    // How a consumer waits for events after the given number of failed attempts
+    public enum WaitStrategy {
+        // Spin on the CPU, which has the lowest latency but keeps one core busy for every subscriber
+        BUSY_SPIN {
+            @Override
+            void idle(int attempt) {
+                Thread.onSpinWait();
+            }
+        },
+        // Spin for a while and then yield the CPU to other threads
+        YIELD {
+            @Override
+            void idle(int attempt) {
+                if (attempt < SPINS) {
+                    Thread.onSpinWait();
+                } else {
+                    Thread.yield();
+                }
+            }
+        },
+        // Spin and yield for a while, and then park the thread for a short time
+        PARK {
+            @Override
+            void idle(int attempt) {
+                if (attempt < SPINS) {
+                    Thread.onSpinWait();
+                } else if (attempt < SPINS + YIELDS) {
+                    Thread.yield();
+                } else {
+                    LockSupport.parkNanos(PARK_NANOS);
+                }
+            }
+        };
+
+        private static final int SPINS = 100;
+        private static final int YIELDS = 100;
+        private static final long PARK_NANOS = 100_000;
+
+        abstract void idle(int attempt);
+    }
+
+    // Subscribing again with the same subscriber and callback id replaces the subscription
+    public void _addSubscriber(Object subInstance, int callbackId, Consumer<E> callback) {
+        subscribe(Objects.requireNonNull(subInstance), callbackId, null, Objects.requireNonNull(callback), null);
+    }
+
+    public void _addBatchSubscriber(Object subInstance, int callbackId, Consumer<List<E>> callback) {
+        subscribe(Objects.requireNonNull(subInstance), callbackId, null, null, Objects.requireNonNull(callback));
+    }
+
+    // The subscriber is only held weakly, the callback must not refer to it (see _Subscriptions.addWeak)
+    public void _addWeakSubscriber(Object subInstance, int callbackId, Consumer<E> callback) {
+        _WeakSubscriber subscriber = new _WeakSubscriber(subInstance, callbackId, collected);
+        subscribe(subInstance, callbackId, subscriber, Objects.requireNonNull(callback), null);
+    }
+
+    // Events that are published before this returns may still be delivered to the removed subscriber
+    public synchronized void _removeSubscriber(Object subInstance, int callbackId) {
+        expungeCollected();
+        RingConsumer<E> removed = remove(subInstance, callbackId);
+        if (removed != null)
+            removed.stop();
+    }
+
+    // Strong subscriptions are found in the map, weak ones with a scan
+    private RingConsumer<E> remove(Object subInstance, int callbackId) {
+        RingConsumer<E> removed = subscriptions.remove(subInstance, callbackId);
+        if (removed != null)
+            return removed;
+        Iterator<Map.Entry<_WeakSubscriber, RingConsumer<E>>> iterator = weakSubscriptions.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<_WeakSubscriber, RingConsumer<E>> entry = iterator.next();
+            _WeakSubscriber weak = entry.getKey();
+            if (weak.matches(subInstance, callbackId)) {
+                weak.clear();
+                iterator.remove();
+                return entry.getValue();
+            }
+        }
+        return null;
+    }
+
+    // Stop the consumers of the weak subscriptions whose subscribers have been collected
+    private void expungeCollected() {
+        Reference<?> reference = collected.poll();
+        if (reference != null)
+            expunge(reference);
+    }
+
+    private synchronized void expunge(Reference<?> reference) {
+        for (; reference != null; reference = collected.poll()) {
+            RingConsumer<E> removed = weakSubscriptions.remove(reference);
+            if (removed != null) {
+                removed.stop();
+                expunged++;
+            }
+        }
+    }
+
+    public void _publish(E event) {
+        expungeCollected();
+        if (group.consumers.length == 0)
+            return;
+        long sequence = claim(1);
+        int slot = (int) sequence & mask;
+        slots[slot] = event == null ? NULL_EVENT : event;
+        rounds.lazySet(slot, round(sequence));
+    }
+
+    public void _publishAll(Collection<? extends E> events) {
+        publishAll(events.toArray());
+    }
+
+    public void _publishAll(E[] events) {
+        publishAll(events);
+    }
+
+    // The events are published in chunks of at most the capacity of the ring, each chunk takes a single claim
+    private void publishAll(Object[] events) {
+        expungeCollected();
+        if (group.consumers.length == 0)
+            return;
+        for (int start = 0; start < events.length; start += slots.length) {
+            int count = Math.min(slots.length, events.length - start);
+            long first = claim(count) - count + 1;
+            for (int i = 0; i < count; i++) {
+                Object event = events[start + i];
+                slots[(int) (first + i) & mask] = event == null ? NULL_EVENT : event;
+            }
+            for (int i = 0; i < count; i++) {
+                rounds.lazySet((int) (first + i) & mask, round(first + i));
+            }
+        }
+    }
+
+    public synchronized int subscriberCount() {
+        return subscriptions.size() + weakSubscriptions.size();
+    }
+
+    // The number of weak subscriptions that have been removed because their subscriber was collected
+    public long expungedSubscriberCount() {
+        return expunged;
+    }
+
+    // Wait until the events that have been published so far have been delivered to the current subscribers
+    public void _awaitDelivery() throws InterruptedException {
+        _awaitDelivery(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+
+    // Wait at most the given time for the events that have been published so far, return whether they have been
+    // delivered
+    public boolean _awaitDelivery(long timeout, TimeUnit unit) throws InterruptedException {
+        long target = claimed.get();
+        long start = System.nanoTime();
+        long nanos = unit.toNanos(timeout);
+        int attempt = 0;
+        while (!isDelivered(target)) {
+            if (Thread.interrupted())
+                throw new InterruptedException();
+            if (System.nanoTime() - start >= nanos)
+                return false;
+            WaitStrategy.PARK.idle(attempt++);
+        }
+        return true;
+    }
+
+    private boolean isDelivered(long sequence) {
+        for (RingConsumer<?> consumer : group.consumers) {
+            if (consumer.running && consumer.sequence.get() < sequence)
+                return false;
+        }
+        return true;
+    }
+
+    private static void awaitAll() {
+        List<_RingEventHandler<?>> handlers;
+        synchronized (HANDLERS) {
+            handlers = new ArrayList<>(HANDLERS);
+        }
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(_AsyncEventHandler.SHUTDOWN_TIMEOUT_MILLIS);
+        try {
+            for (_RingEventHandler<?> handler : handlers) {
+                if (!handler._awaitDelivery(deadline - System.nanoTime(), TimeUnit.NANOSECONDS))
+                    return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private int round(long sequence) {
+        return (int) (sequence >>> roundShift);
+    }
+
+    // Claim the next count sequences and return the highest of them, waiting until the slowest consumer has passed the
+    // slots they use in the previous round
+    private long claim(int count) {
+        long highest = claimed.getAndAdd(count) + count;
+        long wrapPoint = highest - slots.length;
+        Group current = group;
+        if (wrapPoint > current.minimum) {
+            int attempt = 0;
+            long minimum;
+            while (wrapPoint > (minimum = current.minimumSequence(highest))) {
+                WaitStrategy.PARK.idle(attempt++);
+                current = group;
+            }
+            current.minimum = minimum;
+        }
+        return highest;
+    }
+
+    // A weak subscription has a _WeakSubscriber, a strong one doesn't
+    private synchronized void subscribe(Object subInstance, int callbackId, _WeakSubscriber weak,
+                                        Consumer<E> callback, Consumer<List<E>> batchCallback) {
+        expungeCollected();
+        RingConsumer<E> consumer = new RingConsumer<>(this, callback, batchCallback);
+        // The consumer gates the publishers from where the ring is now, and starts reading after where the ring is once
+        // all publishers see it, so that it never reads a slot that is overwritten before it has been consumed
+        consumer.sequence.set(claimed.get());
+        RingConsumer<?>[] consumers = group.consumers;
+        RingConsumer<?>[] updated = Arrays.copyOf(consumers, consumers.length + 1);
+        updated[consumers.length] = consumer;
+        group = new Group(updated);
+        consumer.sequence.set(claimed.get());
+
+        RingConsumer<E> replaced = remove(subInstance, callbackId);
+        if (weak == null) {
+            subscriptions.put(subInstance, callbackId, consumer);
+        } else {
+            weakSubscriptions.put(weak, consumer);
+        }
+        if (replaced != null)
+            replaced.stop();
+        consumer.start();
+    }
+
+    // Called by the thread of a stopped consumer when it exits, until then it keeps the slots it hasn't read yet
+    private synchronized void removeConsumer(RingConsumer<?> consumer) {
+        RingConsumer<?>[] consumers = group.consumers;
+        RingConsumer<?>[] updated = new RingConsumer<?>[consumers.length - 1];
+        int i = 0;
+        for (RingConsumer<?> c : consumers) {
+            if (c != consumer)
+                updated[i++] = c;
+        }
+        group = new Group(updated);
+    }
+
+    // The consumers, which gate the publishers, and a cached lower bound for their sequences. Since sequences only
+    // increase the cached minimum can be stale, which only makes a publisher check the consumers again.
+    private static final class Group {
+        private final RingConsumer<?>[] consumers;
+        private volatile long minimum;
+
+        private Group(RingConsumer<?>[] consumers) {
+            this.consumers = consumers;
+            this.minimum = Long.MIN_VALUE;
+        }
+
+        private long minimumSequence(long ifEmpty) {
+            long minimum = ifEmpty;
+            for (RingConsumer<?> consumer : consumers) {
+                minimum = Math.min(minimum, consumer.sequence.get());
+            }
+            return minimum;
+        }
+    }
+
+    // Delivers the events to one subscriber on its own thread. The callback or the batch callback is null.
+    private static final class RingConsumer<E> implements Runnable {
+        private final _RingEventHandler<E> handler;
+        private final Consumer<E> callback;
+        private final Consumer<List<E>> batchCallback;
+        private final Sequence sequence;
+        private final Thread thread;
+        private volatile boolean running;
+
+        private RingConsumer(_RingEventHandler<E> handler, Consumer<E> callback, Consumer<List<E>> batchCallback) {
+            this.handler = handler;
+            this.callback = callback;
+            this.batchCallback = batchCallback;
+            this.sequence = new Sequence(-1);
+            this.thread = new Thread(this, "_RingEventHandler consumer");
+            this.thread.setDaemon(true);
+            this.running = true;
+        }
+
+        private void start() {
+            thread.start();
+        }
+
+        private void stop() {
+            running = false;
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public void run() {
+            long next = sequence.get() + 1;
+            int attempt = 0;
+            while (running) {
+                long available = highestPublished(next);
+                if (available < next) {
+                    handler.waitStrategy.idle(attempt++);
+                    continue;
+                }
+                attempt = 0;
+                deliver(next, available);
+                sequence.set(available);
+                next = available + 1;
+            }
+            sequence.set(Long.MAX_VALUE); // stop gating the publishers before waiting for the lock
+            handler.removeConsumer(this);
+        }
+
+        // The highest sequence from next on up to which all events have been published, or next - 1
+        private long highestPublished(long next) {
+            long claimed = handler.claimed.get();
+            for (long s = next; s <= claimed; s++) {
+                if (handler.rounds.get((int) s & handler.mask) != handler.round(s))
+                    return s - 1;
+            }
+            return claimed;
+        }
+
+        private void deliver(long first, long last) {
+            if (batchCallback != null) {
+                List<E> events = new ArrayList<>((int) (last - first + 1));
+                for (long s = first; s <= last; s++) {
+                    events.add(event(s));
+                }
+                deliver(batchCallback, Collections.unmodifiableList(events));
+            } else {
+                for (long s = first; s <= last; s++) {
+                    deliver(callback, event(s));
+                }
+            }
+        }
+
+        private <T> void deliver(Consumer<T> callback, T event) {
+            try {
+                callback.accept(event);
+            } catch (Throwable e) {
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, e);
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private E event(long sequence) {
+            Object event = handler.slots[(int) sequence & handler.mask];
+            return event == NULL_EVENT ? null : (E) event;
+        }
+    }
+
+    // A sequence counter that is padded to fill its own cache lines, so that the counters that different threads write
+    // don't share a cache line
+    @SuppressWarnings("unused")
+    private static class SequencePadding {
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    private static class SequenceValue extends SequencePadding {
+        protected volatile long value;
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Sequence extends SequenceValue {
+        private static final VarHandle VALUE;
+
+        static {
+            try {
+                VALUE = MethodHandles.lookup().findVarHandle(SequenceValue.class, "value", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        long p9, p10, p11, p12, p13, p14, p15;
+
+        private Sequence(long initial) {
+            value = initial;
+        }
+
+        long get() {
+            return value;
+        }
+
+        void set(long sequence) {
+            value = sequence;
+        }
+
+        long getAndAdd(long delta) {
+            return (long) VALUE.getAndAdd(this, delta);
+        }
+    }
+}
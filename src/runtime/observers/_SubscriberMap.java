@@ -0,0 +1,63 @@
+package runtime.observers;
+
+// Maps subscriptions, i.e. a subscriber instance (compared by identity) together with the id of its callback, to values
+// of type V, see _SubscriberTable.
+final class _SubscriberMap<V> extends _SubscriberTable {
+    private Object[] values;
+
+    _SubscriberMap() {
+        values = new Object[capacity()];
+    }
+
+    // The value of the given subscription, or null if there is no such subscription
+    @SuppressWarnings("unchecked")
+    V get(Object instance, int callbackId) {
+        int slot = slotOf(instance, callbackId);
+        return isFree(slot) ? null : (V) values[slot];
+    }
+
+    // Returns the value that was replaced, or null
+    @SuppressWarnings("unchecked")
+    V put(Object instance, int callbackId, V value) {
+        int slot = slotOf(instance, callbackId);
+        if (!isFree(slot)) {
+            V replaced = (V) values[slot];
+            values[slot] = value;
+            return replaced;
+        }
+        values[slot] = value;
+        addAt(slot, instance, callbackId);
+        return null;
+    }
+
+    // Returns the value that was removed, or null if there is no such subscription
+    @SuppressWarnings("unchecked")
+    V remove(Object instance, int callbackId) {
+        int slot = slotOf(instance, callbackId);
+        if (isFree(slot))
+            return null;
+        V removed = (V) values[slot];
+        removeAt(slot);
+        return removed;
+    }
+
+    @Override
+    void moveValue(int from, int to) {
+        values[to] = values[from];
+    }
+
+    @Override
+    void clearValue(int slot) {
+        values[slot] = null;
+    }
+
+    @Override
+    void resizeValues(int capacity, int[] slots) {
+        Object[] oldValues = values;
+        values = new Object[capacity];
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] >= 0)
+                values[slots[i]] = oldValues[i];
+        }
+    }
+}
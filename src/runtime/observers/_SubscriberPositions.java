@@ -0,0 +1,50 @@
+package runtime.observers;
+
+// Maps subscriptions, i.e. a subscriber instance (compared by identity) together with the id of its callback, to their
+// positions in an array, which are kept in an int array next to the keys so that they aren't boxed. See
+// _SubscriberTable.
+final class _SubscriberPositions extends _SubscriberTable {
+    private int[] positions;
+
+    _SubscriberPositions() {
+        positions = new int[capacity()];
+    }
+
+    // The position of the given subscription, or -1 if there is no such subscription
+    int get(Object instance, int callbackId) {
+        int slot = slotOf(instance, callbackId);
+        return isFree(slot) ? -1 : positions[slot];
+    }
+
+    void put(Object instance, int callbackId, int position) {
+        int slot = slotOf(instance, callbackId);
+        positions[slot] = position;
+        if (isFree(slot))
+            addAt(slot, instance, callbackId);
+    }
+
+    void remove(Object instance, int callbackId) {
+        int slot = slotOf(instance, callbackId);
+        if (!isFree(slot))
+            removeAt(slot);
+    }
+
+    @Override
+    void moveValue(int from, int to) {
+        positions[to] = positions[from];
+    }
+
+    @Override
+    void clearValue(int slot) {
+    }
+
+    @Override
+    void resizeValues(int capacity, int[] slots) {
+        int[] oldPositions = positions;
+        positions = new int[capacity];
+        for (int i = 0; i < slots.length; i++) {
+            if (slots[i] >= 0)
+                positions[slots[i]] = oldPositions[i];
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package runtime.observers;
+
+import java.util.Arrays;
+import java.util.Objects;
+
+// The keys of a table of subscriptions, i.e. of subscriber instances (compared by identity) together with the ids of
+// their callbacks. The keys are kept in parallel arrays with open addressing and linear probing, so looking up, adding
+// and removing a subscription doesn't allocate (unless the table grows) or need a key object. Removing an entry moves
+// the later entries of its probe sequence back instead of leaving a tombstone. The subclasses keep their values in an
+// array of the same capacity, and move them along with the keys. It isn't thread safe, the handlers only use it while
+// holding their lock.
+abstract class _SubscriberTable {
+    private static final int INITIAL_CAPACITY = 8; // a power of two
+
+    private Object[] instances; // null for an empty slot
+    private int[] callbackIds;
+    private int size;
+
+    _SubscriberTable() {
+        instances = new Object[INITIAL_CAPACITY];
+        callbackIds = new int[INITIAL_CAPACITY];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    final int capacity() {
+        return instances.length;
+    }
+
+    // The slot of the given subscription, or the empty slot where it would be added
+    final int slotOf(Object instance, int callbackId) {
+        int mask = instances.length - 1;
+        int slot = hash(instance, callbackId) & mask;
+        while (instances[slot] != null && (instances[slot] != instance || callbackIds[slot] != callbackId)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    final boolean isFree(int slot) {
+        return instances[slot] == null;
+    }
+
+    // Adds the subscription in the empty slot that slotOf returned for it, once its value has been set
+    final void addAt(int slot, Object instance, int callbackId) {
+        instances[slot] = Objects.requireNonNull(instance);
+        callbackIds[slot] = callbackId;
+        if (++size * 2 > instances.length) // keep the load factor at most 1/2, so that probe sequences stay short
+            resize(instances.length * 2);
+    }
+
+    final void removeAt(int slot) {
+        size--;
+        // move back the entries that would no longer be found once the slot is empty
+        int mask = instances.length - 1;
+        int empty = slot;
+        for (int next = (slot + 1) & mask; instances[next] != null; next = (next + 1) & mask) {
+            int home = hash(instances[next], callbackIds[next]) & mask;
+            if (((next - home) & mask) >= ((next - empty) & mask)) {
+                instances[empty] = instances[next];
+                callbackIds[empty] = callbackIds[next];
+                moveValue(next, empty);
+                empty = next;
+            }
+        }
+        instances[empty] = null;
+        clearValue(empty);
+    }
+
+    // Move the value of a slot to another one
+    abstract void moveValue(int from, int to);
+
+    // Clear the value of a slot that has become empty, so that it doesn't keep the value reachable
+    abstract void clearValue(int slot);
+
+    // Replace the values with an array of the given capacity, where the value of each old slot is in the given slot
+    // (or -1 for an empty one)
+    abstract void resizeValues(int capacity, int[] slots);
+
+    private void resize(int capacity) {
+        Object[] oldInstances = instances;
+        int[] oldCallbackIds = callbackIds;
+        instances = new Object[capacity];
+        callbackIds = new int[capacity];
+        int[] slots = new int[oldInstances.length];
+        Arrays.fill(slots, -1);
+        for (int i = 0; i < oldInstances.length; i++) {
+            if (oldInstances[i] != null) {
+                int slot = slotOf(oldInstances[i], oldCallbackIds[i]);
+                instances[slot] = oldInstances[i];
+                callbackIds[slot] = oldCallbackIds[i];
+                slots[i] = slot;
+            }
+        }
+        resizeValues(capacity, slots);
+    }
+
+    // Identity hash codes are spread over the low bits by the multiplication, since only those select the slot
+    private static int hash(Object instance, int callbackId) {
+        int h = (System.identityHashCode(instance) * 31 + callbackId) * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
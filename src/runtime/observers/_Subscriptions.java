@@ -0,0 +1,167 @@
+package runtime.observers;
+
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.util.Arrays;
+import java.util.Objects;
+
+// The subscriptions of an event handler, with callbacks of type C (e.g. Consumer or IntConsumer).
+//
+// The callbacks are kept in a copy-on-write array: adding or removing a subscriber replaces the array, while
+// publishing iterates over the array that was current when it started. Publishing therefore doesn't allocate or take a
+// lock, can be done from any number of threads, and callbacks may subscribe or unsubscribe while an event is published
+// (the change takes effect from the next publish). The index maps each subscriber and callback id to the position of
+// its callback in the array, so that it can be replaced or removed without a scan. Changes are rare compared to
+// publishing, and are synchronized.
+//
+// A weak subscription doesn't keep its subscriber reachable. Its subscriber is enqueued in a reference queue once it
+// has been collected, and the subscription is expunged the next time an event is published or a subscriber is added
+// or removed. Weak subscriptions aren't in the index, since that would keep the subscribers reachable.
+final class _Subscriptions<C> {
+    private volatile C[] callbacks;
+    private Object[] subscribers; // the subscriber of each callback, or its _WeakSubscriber
+    private int[] callbackIds; // of each callback
+    private final _SubscriberPositions index;
+    private int weakCount;
+    private final ReferenceQueue<Object> collected;
+    private volatile long expunged;
+
+    _Subscriptions(C[] noCallbacks) {
+        callbacks = noCallbacks;
+        subscribers = new Object[0];
+        callbackIds = new int[0];
+        index = new _SubscriberPositions();
+        collected = new ReferenceQueue<>();
+    }
+
+    // The callbacks to publish an event to, the array must not be modified
+    C[] callbacks() {
+        expungeCollected();
+        return callbacks;
+    }
+
+    // Subscribing again with the same subscriber and callback id replaces the subscription
+    void add(Object subInstance, int callbackId, C callback) {
+        add(subInstance, callbackId, Objects.requireNonNull(subInstance), callback);
+    }
+
+    // The handler only holds the subscriber weakly, and expunges the subscription once the subscriber has been
+    // collected. The callback is held strongly, so it must not refer to the subscriber itself.
+    void addWeak(Object subInstance, int callbackId, C callback) {
+        add(subInstance, callbackId, new _WeakSubscriber(subInstance, callbackId, collected), callback);
+    }
+
+    private synchronized void add(Object subInstance, int callbackId, Object subscriber, C callback) {
+        expungeCollected();
+        int position = positionOf(subInstance, callbackId);
+        if (position >= 0) { // subscribing again replaces the subscription
+            C[] updated = callbacks.clone();
+            updated[position] = callback;
+            unindex(position);
+            subscribers[position] = subscriber;
+            callbackIds[position] = callbackId;
+            index(position);
+            callbacks = updated;
+            return;
+        }
+        int size = subscribers.length;
+        C[] updated = Arrays.copyOf(callbacks, size + 1);
+        updated[size] = callback;
+        subscribers = Arrays.copyOf(subscribers, size + 1);
+        subscribers[size] = subscriber;
+        callbackIds = Arrays.copyOf(callbackIds, size + 1);
+        callbackIds[size] = callbackId;
+        index(size);
+        callbacks = updated;
+    }
+
+    synchronized void remove(Object subInstance, int callbackId) {
+        expungeCollected();
+        int position = positionOf(subInstance, callbackId);
+        if (position >= 0)
+            removeAt(position);
+    }
+
+    // The callback of the given subscription, or null if there is no such subscription
+    synchronized C get(Object subInstance, int callbackId) {
+        int position = positionOf(subInstance, callbackId);
+        return position < 0 ? null : callbacks[position];
+    }
+
+    int count() {
+        return callbacks.length;
+    }
+
+    // The number of weak subscriptions that have been removed because their subscriber was collected
+    long expungedCount() {
+        return expunged;
+    }
+
+    // The position of a strong subscription is found through the index, weak subscriptions are found with a scan
+    private int positionOf(Object subInstance, int callbackId) {
+        int position = index.get(subInstance, callbackId);
+        if (position >= 0)
+            return position;
+        for (int i = 0; weakCount > 0 && i < subscribers.length; i++) {
+            if (subscribers[i] instanceof _WeakSubscriber weak && weak.matches(subInstance, callbackId))
+                return i;
+        }
+        return -1;
+    }
+
+    private void removeAt(int position) {
+        unindex(position);
+        // the last callback is moved into the removed one's place, which is fine since the order is undefined
+        int last = subscribers.length - 1;
+        C[] updated = Arrays.copyOf(callbacks, last);
+        Object[] updatedSubscribers = Arrays.copyOf(subscribers, last);
+        int[] updatedCallbackIds = Arrays.copyOf(callbackIds, last);
+        if (position != last) {
+            updated[position] = callbacks[last];
+            updatedSubscribers[position] = subscribers[last];
+            updatedCallbackIds[position] = callbackIds[last];
+            if (!(subscribers[last] instanceof _WeakSubscriber))
+                index.put(subscribers[last], callbackIds[last], position);
+        }
+        subscribers = updatedSubscribers;
+        callbackIds = updatedCallbackIds;
+        callbacks = updated;
+    }
+
+    private void index(int position) {
+        if (subscribers[position] instanceof _WeakSubscriber) {
+            weakCount++;
+        } else {
+            index.put(subscribers[position], callbackIds[position], position);
+        }
+    }
+
+    private void unindex(int position) {
+        if (subscribers[position] instanceof _WeakSubscriber weak) {
+            weakCount--;
+            weak.clear(); // it is no longer in the array, so don't enqueue it
+        } else {
+            index.remove(subscribers[position], callbackIds[position]);
+        }
+    }
+
+    // Remove the weak subscriptions whose subscribers have been collected. When publishing this only reads the head of
+    // the queue, unless a subscriber has been collected.
+    private void expungeCollected() {
+        Reference<?> reference = collected.poll();
+        if (reference != null)
+            expunge(reference);
+    }
+
+    private synchronized void expunge(Reference<?> reference) {
+        for (; reference != null; reference = collected.poll()) {
+            for (int i = 0; i < subscribers.length; i++) {
+                if (subscribers[i] == reference) {
+                    removeAt(i);
+                    expunged++;
+                    break;
+                }
+            }
+        }
+    }
+}
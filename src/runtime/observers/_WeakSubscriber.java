@@ -0,0 +1,21 @@
+package runtime.observers;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+
+// Identifies a weak subscription, which doesn't keep its subscriber reachable. Once the subscriber has been collected
+// the subscription is enqueued in the handler's queue and expunged. A subscription for a given subscriber and callback
+// id is found with matches.
+final class _WeakSubscriber extends WeakReference<Object> {
+    private final int callbackId;
+
+    _WeakSubscriber(Object instance, int callbackId, ReferenceQueue<Object> queue) {
+        super(Objects.requireNonNull(instance), queue);
+        this.callbackId = callbackId;
+    }
+
+    boolean matches(Object instance, int callbackId) {
+        return this.callbackId == callbackId && refersTo(instance);
+    }
+}
@@ -0,0 +1,13 @@
+package transpiler;
+
+// The kind of code that is generated for calls on decorated objects
+public enum DecoratorDispatch {
+    // Calls are plain interface calls on the closest decorator (or base object) that implements the called method
+    STATIC,
+    // Calls are resolved at runtime from the method name and argument types, through the decorator runtime
+    REFLECTIVE,
+    // Calls on decorated objects go through a call site per method of the wrapper class, which is linked to the top
+    // implementation of the method on the first call and checks that it's still the top one on later calls. Calls
+    // between decorators are as with STATIC.
+    CALL_SITE
+}
@@ -18,6 +18,19 @@ public class Environment {
         };
     }
 
+    // convert boxed types to their primitive equivalent
+    public static String unboxedId(String id) {
+        return switch (id) {
+            case "Byte" -> "byte";
+            case "Short" -> "short";
+            case "Integer" -> "int";
+            case "Long" -> "long";
+            case "Float" -> "float";
+            case "Double" -> "double";
+            default -> id;
+        };
+    }
+
     // Create an identifier that can't be defined in the source language to avoid name conflicts
     public static String reservedId(String source) {
         return "_" + source;
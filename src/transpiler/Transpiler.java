@@ -13,9 +13,21 @@ public class Transpiler {
     private static final String OBSERVERS_PACKAGE = "runtime.observers";
 
     private final State state;
+    private final DecoratorDispatch decoratorDispatch;
 
     public Transpiler() {
-        state = new State();
+        this(DecoratorDispatch.STATIC);
+    }
+
+    public Transpiler(DecoratorDispatch decoratorDispatch) {
+        this(decoratorDispatch, null);
+    }
+
+    // The generated code is put in the given package, or in the default package if it's null
+    public Transpiler(DecoratorDispatch decoratorDispatch, String packageId) {
+        this.state = new State();
+        this.decoratorDispatch = decoratorDispatch;
+        state.setPackageId(packageId);
     }
 
     public void addSource(String fileName, ProgramContext source) {
@@ -25,7 +37,7 @@ public class Transpiler {
     // Transpile all the sources
     public TranspilerOutput transpile() {
         TaskQueue taskQueue = new TaskQueue();
-        StartVisitor startVisitor = new StartVisitor(taskQueue);
+        StartVisitor startVisitor = new StartVisitor(taskQueue, decoratorDispatch, state.getSources());
 
         state.getSources().forEach((name, tree) -> {
             startVisitor.setTypeFileName(name);
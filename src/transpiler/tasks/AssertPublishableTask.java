@@ -1,6 +1,7 @@
 package transpiler.tasks;
 
 import grammar.gen.ConfluxParser;
+import grammar.gen.ConfluxParser.PublishedTypeContext;
 import grammar.gen.ConfluxParser.TypeContext;
 import grammar.gen.ConfluxParserBaseVisitor;
 import grammar.gen.ConfluxParserVisitor;
@@ -53,7 +54,8 @@ public class AssertPublishableTask implements TranspilerTask {
                                                       + publisherTypeId + "'");
                     }
                     Set<String> subtypeEvents = ctx
-                            .typePublishes().type().stream().map(TypeContext::getText).map(Environment::boxedId)
+                            .typePublishes().publishedType().stream().map(PublishedTypeContext::type)
+                            .map(TypeContext::getText).map(Environment::boxedId)
                             .collect(Collectors.toCollection(HashSet::new));
                     if (!subtypeEvents.containsAll(eventTypes)) {
                         throw new TranspilerException("Type '" + id + "' doesn't publish all the events of super type '"
@@ -24,7 +24,8 @@ public class TaskQueue {
         ENABLE_TYPE_DECORATION,
         POPULATE_INTERFACES,
         MAKE_OBSERVER_CLASSES,
-        MAKE_DECORATOR_CLASSES
+        MAKE_DECORATOR_CLASSES,
+        ADD_IMPORTS
     }
 
     private final TreeMap<Priority, List<TranspilerTask>> tasks = new TreeMap<>();
@@ -5,15 +5,21 @@ import grammar.gen.ConfluxParser.*;
 import grammar.gen.ConfluxParserBaseVisitor;
 import grammar.gen.ConfluxParserVisitor;
 import java_builder.*;
+import java_builder.MethodBuilder.MethodSignature;
 import org.antlr.v4.runtime.ParserRuleContext;
 import org.antlr.v4.runtime.tree.TerminalNode;
+import transpiler.DecoratorDispatch;
 import transpiler.Environment;
 import transpiler.TranspilerException;
 import transpiler.TranspilerState;
 import transpiler.tasks.TaskQueue;
 import transpiler.tasks.TranspilerTask;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
 
 import static transpiler.tasks.TaskQueue.Priority;
 
@@ -21,29 +27,46 @@ public class DecoratorTranspiler extends ConfluxParserBaseVisitor<String> {
     private static final String ABSTRACT_DECORATOR_TYPE_ID = Environment.reservedId("AbstractDecorator");
     private static final String DECORATOR_REF_TYPE_ID = "DecoratorRef";
     private static final String ADD_DECORATOR_METHOD_ID = Environment.reservedId("addDecorator");
+    private static final String ADD_DECORATORS_METHOD_ID = Environment.reservedId("addDecorators");
     private static final String REMOVE_DECORATOR_METHOD_ID = Environment.reservedId("removeDecorator");
     private static final String DECORATOR_HANDLER_TYPE_ID = Environment.reservedId("DecoratorHandler");
     private static final String DECORATOR_HANDLER_VAR_ID = Environment.reservedId("decoratorHandler");
+    private static final String DECORATOR_HANDLER_GETTER_ID = Environment.reservedId("handler");
+    private static final String BASE_VAR_ID = Environment.reservedId("base");
+    private static final String DECORATED_METHOD_TYPE_ID = Environment.reservedId("DecoratedMethod");
     private static final String HANDLER_ADD_DECORATOR = "addDecorator";
+    private static final String HANDLER_ADD_DECORATORS = "addDecorators";
     private static final String HANDLER_REMOVE_DECORATOR = "removeDecorator";
 
-    private static final String CALL_BASE = Environment.reservedId("getPrevious()") + "." +
-                                            Environment.reservedId("invoke");
-
-    public static final String CALL_TOP_DECORATOR = Environment.reservedId("decoratorHandler") +
-                                                    ".callTopDecorator";
+    // The runtime methods that return an invoker of a method for reflective calls, below a decorator and at the top of
+    // a chain
+    private static final String BASE_INVOKER = Environment.reservedId("getPrevious()") + "." +
+                                               Environment.reservedId("invoker");
+    private static final String TOP_INVOKER = Environment.reservedId("decoratorHandler") + ".topInvoker";
+
+    // Expressions for the closest object that implements a given type, below a decorator and at the top of a chain.
+    // The type is identified by its index among the types that the decorator forwards to, or among the top types of
+    // the wrapper, which it passes to its handler.
+    private static final String PREVIOUS_IMPLEMENTER = "((%s) " + Environment.reservedId("previousImplementer") +
+                                                       "(%d))";
+    private static final String TOP_IMPLEMENTER = "((%s) " + Environment.reservedId("decoratorHandler") +
+                                                  ".topImplementer(%d))";
+    private static final String TOP_TYPES_ID = Environment.reservedId("topTypes");
 
     private final TaskQueue taskQueue;
     private final ConfluxParserVisitor<Code> stmTranspiler;
+    private final DecoratorDispatch dispatch;
     private ConfluxParserVisitor<String> expressionTranspiler;
 
     private boolean generateClass;
     private String decoratorId;
     private ClassBuilder decoratorClass;
 
-    public DecoratorTranspiler(TaskQueue taskQueue, ConfluxParserVisitor<Code> stmTranspiler) {
+    public DecoratorTranspiler(TaskQueue taskQueue, ConfluxParserVisitor<Code> stmTranspiler,
+                               DecoratorDispatch dispatch) {
         this.taskQueue = taskQueue;
         this.stmTranspiler = stmTranspiler;
+        this.dispatch = dispatch;
     }
 
     public void setExpressionTranspiler(ConfluxParserVisitor<String> expressionTranspiler) {
@@ -73,10 +96,10 @@ public class DecoratorTranspiler extends ConfluxParserBaseVisitor<String> {
             taskQueue.addTask(Priority.ENABLE_TYPE_DECORATION, new EnableTypeDecorationTask(typeId));
 
             // create the common super type for decorators if the given type
-            taskQueue.addTask(Priority.MAKE_DECORATOR_CLASSES, new CreateDecoratorSuperClassTask(typeId));
+            taskQueue.addTask(Priority.MAKE_DECORATOR_CLASSES, new CreateDecoratorSuperClassTask(typeId, dispatch));
             if (generateClass) {
                 // add wrapper classes for types that can be decorated
-                taskQueue.addTask(Priority.MAKE_DECORATOR_CLASSES, new CreateDecoratorWrapperTask(typeId));
+                taskQueue.addTask(Priority.MAKE_DECORATOR_CLASSES, new CreateDecoratorWrapperTask(typeId, dispatch));
             }
         }
         return defaultResult();
@@ -144,24 +167,52 @@ public class DecoratorTranspiler extends ConfluxParserBaseVisitor<String> {
         return defaultResult();
     }
 
+    // A list of decorators in parentheses is added in one step, and results in an array of decorator references
     @Override
     public String visitAddDecoratorExpression(AddDecoratorExpressionContext ctx) {
-        return "%s.%s(%s.%s(%s))".formatted(
-                expressionTranspiler.visitDecoratedObject(ctx.decoratedObject()),
-                ADD_DECORATOR_METHOD_ID,
+        String decoratedObject = expressionTranspiler.visitDecoratedObject(ctx.decoratedObject());
+        if (ctx.LPAREN() == null) {
+            return "%s.%s(%s)".formatted(decoratedObject, ADD_DECORATOR_METHOD_ID,
+                                         visitDecoratorConstruction(ctx.decoratorConstruction(0)));
+        }
+        return new CodeBuilder()
+                .append(decoratedObject).append(".").append(ADD_DECORATORS_METHOD_ID)
+                .append("(new ").append(ABSTRACT_DECORATOR_TYPE_ID).append("[]{")
+                .beginDelimiter(", ")
+                .append(ctx.decoratorConstruction().stream()
+                           .map(this::visitDecoratorConstruction).toArray(String[]::new))
+                .endDelimiter()
+                .append("})")
+                .toCode();
+    }
+
+    @Override
+    public String visitDecoratorConstruction(DecoratorConstructionContext ctx) {
+        return "%s.%s(%s)".formatted(
                 visitDecoratorId(ctx.decoratorId()),
                 expressionTranspiler.visitMethodId(ctx.methodId()),
                 ctx.parameterList() == null ? "" : expressionTranspiler.visitParameterList(ctx.parameterList())
         );
     }
 
+    // A list of decorator references in parentheses is removed in one step. A single reference may also be an array
+    // of references, in which case the overload of the remove method that takes an array is called.
     @Override
     public String visitRemoveDecoratorStatement(RemoveDecoratorStatementContext ctx) {
-        return "%s.%s(%s);".formatted(
-                expressionTranspiler.visitDecoratedObject(ctx.decoratedObject()),
-                REMOVE_DECORATOR_METHOD_ID,
-                expressionTranspiler.visitDecoratorRef(ctx.decoratorRef())
-        );
+        String[] refs = ctx.decoratorRef().stream().map(expressionTranspiler::visitDecoratorRef).toArray(String[]::new);
+        return new CodeBuilder()
+                .append(expressionTranspiler.visitDecoratedObject(ctx.decoratedObject()))
+                .append(".").append(REMOVE_DECORATOR_METHOD_ID).append("(")
+                .beginConditional(ctx.LPAREN() == null)
+                .append(refs[0])
+                .endConditional()
+                .beginConditional(ctx.LPAREN() != null)
+                .append("new ").append(DECORATOR_REF_TYPE_ID).append("[]{")
+                .beginDelimiter(", ").append(refs).endDelimiter()
+                .append("}")
+                .endConditional()
+                .append(");")
+                .toCode();
     }
 
     @Override
@@ -214,7 +265,8 @@ public class DecoratorTranspiler extends ConfluxParserBaseVisitor<String> {
         return "";
     }
 
-    private record CreateDecoratorSuperClassTask(String decoratedTypeId) implements TranspilerTask {
+    private record CreateDecoratorSuperClassTask(String decoratedTypeId, DecoratorDispatch dispatch)
+            implements TranspilerTask {
         @Override
         public void run(TranspilerState state) {
             InterfaceBuilder decoratedInterface = state.lookupInterface(decoratedTypeId);
@@ -227,18 +279,33 @@ public class DecoratorTranspiler extends ConfluxParserBaseVisitor<String> {
                     .setIdentifier(decoratorSuperClassId(decoratedTypeId))
                     .addExtendedClass(ABSTRACT_DECORATOR_TYPE_ID)
                     .addImplementedInterface(decoratedTypeId);
-            implementMethods(decoratedInterface, decorator);
+            List<String> forwardedTypes = new ArrayList<>();
+            implementMethods(state, decoratedInterface, decorator, forwardedTypes);
+            if (!forwardedTypes.isEmpty()) {
+                CodeBuilder types = new CodeBuilder().beginDelimiter(", ");
+                forwardedTypes.forEach(type -> types.append(classLiteral(type)));
+                decorator.addConstructor(new MethodBuilder()
+                        .addModifier("protected")
+                        .setIdentifier(decoratorSuperClassId(decoratedTypeId))
+                        .addStatement("super(" + types.endDelimiter().toCode() + ");"));
+            }
             state.addClass(decorator);
         }
 
-        private void implementMethods(InterfaceBuilder baseInterface, ClassBuilder decoratorClass) {
+        // The calls are forwarded to the implementers of the types in forwardedTypes, which the decorator passes to
+        // the runtime so that it looks them up whenever the chain changes
+        private void implementMethods(TranspilerState state, InterfaceBuilder baseInterface,
+                                      ClassBuilder decoratorClass, List<String> forwardedTypes) {
             for (MethodBuilder method : baseInterface.getMethods()) {
                 boolean isStatic = method.getModifiers().stream().anyMatch(c -> c.toCode().equals("static"));
-                boolean isAddDecoratorMethod = method.getIdentifier().toCode().equals(ADD_DECORATOR_METHOD_ID);
+                boolean isAddDecoratorMethod = method.getIdentifier().toCode().equals(ADD_DECORATOR_METHOD_ID) ||
+                                               method.getIdentifier().toCode().equals(ADD_DECORATORS_METHOD_ID);
                 boolean isRemoveDecoratorMethod = method.getIdentifier().toCode().equals(REMOVE_DECORATOR_METHOD_ID);
 
                 if (!isStatic && !isAddDecoratorMethod && !isRemoveDecoratorMethod) {
-                    decoratorClass.addMethod(makeReflectedDelegate(method, CALL_BASE));
+                    decoratorClass.addMethod(makeDelegate(state, decoratedTypeId, decoratorClass, method,
+                                                          dispatch, type -> previousImplementer(forwardedTypes, type),
+                                                          BASE_INVOKER));
                 }
             }
         }
@@ -260,12 +327,16 @@ public class DecoratorTranspiler extends ConfluxParserBaseVisitor<String> {
                     break;
                 }
             }
-            if (!canSuperTypeBeDecorated)
-                decoratedInterface.addMethod(makeRemoveDecoratorMethod());
+            if (!canSuperTypeBeDecorated) {
+                decoratedInterface.addMethod(makeAddDecoratorsMethod())
+                                  .addMethod(makeRemoveDecoratorMethod(DECORATOR_REF_TYPE_ID))
+                                  .addMethod(makeRemoveDecoratorMethod(DECORATOR_REF_TYPE_ID + "[]"));
+            }
         }
     }
 
-    private record CreateDecoratorWrapperTask(String wrappedTypeId) implements TranspilerTask {
+    private record CreateDecoratorWrapperTask(String wrappedTypeId, DecoratorDispatch dispatch)
+            implements TranspilerTask {
         @Override
         public void run(TranspilerState state) {
             InterfaceBuilder wrappedInterface = state.lookupInterface(wrappedTypeId);
@@ -277,28 +348,40 @@ public class DecoratorTranspiler extends ConfluxParserBaseVisitor<String> {
             ClassBuilder wrapperClass = new ClassBuilder()
                     .setIdentifier(Environment.decoratorWrapperId(wrappedTypeId))
                     .addImplementedInterface(wrappedTypeId)
+                    .addField(makeBaseField())
                     .addField(makeHandlerField())
-                    .addConstructor(makeConstructor());
+                    .addConstructor(makeConstructor())
+                    .addMethod(makeHandlerGetter());
 
+            List<String> topTypes = new ArrayList<>();
             wrappedInterface.getMethods().forEach(method -> {
                 boolean isAddDecoratorMethod = method.getIdentifier().toCode().equals(ADD_DECORATOR_METHOD_ID);
+                boolean isAddDecoratorsMethod = method.getIdentifier().toCode().equals(ADD_DECORATORS_METHOD_ID);
                 boolean isRemoveDecoratorMethod = method.getIdentifier().toCode().equals(REMOVE_DECORATOR_METHOD_ID);
                 boolean isStatic = method.getModifiers().stream().anyMatch(c -> c.toCode().equals("static"));
 
-                if (!isStatic && !isAddDecoratorMethod && !isRemoveDecoratorMethod) {
-                    wrapperClass.addMethod(makeReflectedDelegate(method, CALL_TOP_DECORATOR));
+                if (!isStatic && !isAddDecoratorMethod && !isAddDecoratorsMethod && !isRemoveDecoratorMethod) {
+                    MethodBuilder implementation = dispatch == DecoratorDispatch.CALL_SITE
+                            ? makeCallSiteDelegate(wrapperClass, method)
+                            : makeDelegate(state, wrappedTypeId, wrapperClass, method, dispatch,
+                                           type -> topImplementer(topTypes, type), TOP_INVOKER);
+                    wrapperClass.addMethod(addUndecoratedFastPath(implementation, method));
                 }
                 if (isAddDecoratorMethod) {
                     MethodBuilder implementation = method.copySignature(false).addModifier("public");
-                    implementation.addStatement("return %s.%s(this, %s);".formatted(
-                            DECORATOR_HANDLER_VAR_ID,
+                    implementation.addStatement("return %s().%s(this, %s);".formatted(
+                            DECORATOR_HANDLER_GETTER_ID,
                             HANDLER_ADD_DECORATOR,
                             implementation.getParameters().get(0).argId()
                     ));
                     wrapperClass.addMethod(implementation);
                 }
-                if (isRemoveDecoratorMethod) {
+                if (isAddDecoratorsMethod) {
+                    wrapperClass.addMethod(makeAddDecoratorsImplementation(wrappedInterface, method));
+                }
+                if (isRemoveDecoratorMethod) { // there is nothing to remove if no decorator has been added
                     MethodBuilder implementation = method.copySignature(false).addModifier("public");
+                    implementation.addStatement("if (%s != null)".formatted(DECORATOR_HANDLER_VAR_ID));
                     implementation.addStatement("%s.%s(this, %s);".formatted(
                             DECORATOR_HANDLER_VAR_ID,
                             HANDLER_REMOVE_DECORATOR,
@@ -307,24 +390,82 @@ public class DecoratorTranspiler extends ConfluxParserBaseVisitor<String> {
                     wrapperClass.addMethod(implementation);
                 }
             });
+            CodeBuilder types = new CodeBuilder().append("{").beginDelimiter(", ");
+            topTypes.forEach(type -> types.append(classLiteral(type)));
+            wrapperClass.addField("private static final Class<?>[] " + TOP_TYPES_ID + " = " +
+                                  types.endDelimiter().append("};").toCode());
             state.addClass(wrapperClass);
         }
 
-        private Code makeHandlerField() {
+        // All decorators are added in one step, after checking that each of them decorates one of the types that the
+        // wrapper can be decorated with (i.e. that there is an add decorator method for it)
+        private MethodBuilder makeAddDecoratorsImplementation(InterfaceBuilder wrappedInterface, MethodBuilder method) {
+            MethodBuilder implementation = method.copySignature(false).addModifier("public");
+            String decorators = implementation.getParameters().get(0).argId();
+            CodeBuilder check = new CodeBuilder().beginDelimiter(" || ");
+            wrappedInterface.getMethods().stream()
+                            .filter(m -> m.getIdentifier().toCode().equals(ADD_DECORATOR_METHOD_ID))
+                            .forEach(m -> check.append("decorator instanceof " + m.getParameters().get(0).argType()));
+            check.endDelimiter();
+            return implementation
+                    .addStatement("for (%s decorator : %s) {".formatted(ABSTRACT_DECORATOR_TYPE_ID, decorators))
+                    .addStatement("if (!(%s))".formatted(check.toCode()))
+                    .addStatement("throw new IllegalArgumentException(\"Cannot decorate %s with \" + decorator);"
+                                  .formatted(wrappedTypeId))
+                    .addStatement("}")
+                    .addStatement("return %s().%s(this, %s);".formatted(DECORATOR_HANDLER_GETTER_ID,
+                                                                         HANDLER_ADD_DECORATORS, decorators));
+        }
+
+        private Code makeBaseField() {
             return new CodeBuilder()
                     .append("private final ")
+                    .append(wrappedTypeId).append(" ")
+                    .append(BASE_VAR_ID).append(";");
+        }
+
+        // The handler is created when the first decorator is added, so objects that are never decorated don't need one
+        private Code makeHandlerField() {
+            return new CodeBuilder()
+                    .append("private volatile ")
                     .append(DECORATOR_HANDLER_TYPE_ID).append(" ")
                     .append(DECORATOR_HANDLER_VAR_ID).append(";");
         }
 
         private MethodBuilder makeConstructor() {
-            CodeBuilder stm = new CodeBuilder()
-                    .append(DECORATOR_HANDLER_VAR_ID).append(" = new ")
-                    .append(DECORATOR_HANDLER_TYPE_ID).append("(base);");
             return new MethodBuilder()
                     .setIdentifier(Environment.decoratorWrapperId(wrappedTypeId))
                     .addParameter(wrappedTypeId, "base")
-                    .addStatement(stm);
+                    .addStatement(BASE_VAR_ID + " = base;");
+        }
+
+        // Return the handler, creating it if it doesn't exist yet
+        private MethodBuilder makeHandlerGetter() {
+            return new MethodBuilder()
+                    .addModifier("private")
+                    .setReturnType(DECORATOR_HANDLER_TYPE_ID)
+                    .setIdentifier(DECORATOR_HANDLER_GETTER_ID)
+                    .addStatement("if (%s == null) {".formatted(DECORATOR_HANDLER_VAR_ID))
+                    .addStatement("synchronized (this) {")
+                    .addStatement("if (%s == null)".formatted(DECORATOR_HANDLER_VAR_ID))
+                    .addStatement("%s = new %s(%s, %s);".formatted(DECORATOR_HANDLER_VAR_ID, DECORATOR_HANDLER_TYPE_ID,
+                                                                   BASE_VAR_ID, TOP_TYPES_ID))
+                    .addStatement("}")
+                    .addStatement("}")
+                    .addStatement("return %s;".formatted(DECORATOR_HANDLER_VAR_ID));
+        }
+
+        // Call the base object directly as long as no decorator has been added. Once created, the handler is never
+        // reset, so the implementation that follows the check can read it again.
+        private MethodBuilder addUndecoratedFastPath(MethodBuilder implementation, MethodBuilder method) {
+            boolean isVoid = method.getReturnType().toCode().equals("void");
+            List<Code> baseCall = method.delegateMethod(BASE_VAR_ID).getStatements();
+            implementation.addStatement(0, "if (%s == null) {".formatted(DECORATOR_HANDLER_VAR_ID));
+            implementation.addStatement(1, baseCall.get(0));
+            if (isVoid) {
+                implementation.addStatement(2, "return;");
+            }
+            return implementation.addStatement(isVoid ? 3 : 2, "}");
         }
     }
 
@@ -336,45 +477,189 @@ public class DecoratorTranspiler extends ConfluxParserBaseVisitor<String> {
                 .addStatement("throw new AssertionError(\"This should be unreachable\");");
     }
 
-    private static MethodBuilder makeRemoveDecoratorMethod() {
+    private static MethodBuilder makeAddDecoratorsMethod() {
+        return new MethodBuilder()
+                .addModifier("public").addModifier("default")
+                .setReturnType(DECORATOR_REF_TYPE_ID + "[]").setIdentifier(ADD_DECORATORS_METHOD_ID)
+                .addParameter(ABSTRACT_DECORATOR_TYPE_ID + "[]", "decorators")
+                .addStatement("throw new AssertionError(\"This should be unreachable\");");
+    }
+
+    private static MethodBuilder makeRemoveDecoratorMethod(String refType) {
         return new MethodBuilder()
                 .addModifier("public").addModifier("default").setReturnType("void")
                 .setIdentifier(REMOVE_DECORATOR_METHOD_ID)
-                .addParameter(DECORATOR_REF_TYPE_ID, "decoratorRef");
+                .addParameter(refType, "decoratorRef");
+    }
+
+    // Implement the given method of the decorated type. With static dispatch the call is forwarded to the closest
+    // object that implements the type which first declared the method, since the decorators of that type (and of its
+    // subtypes) are exactly the ones that override the method. If the method was declared by several unrelated types
+    // that are combined by some type in the program, there isn't a single type to look for, and the call falls back
+    // on reflection.
+    private static MethodBuilder makeDelegate(TranspilerState state, String decoratedTypeId, ClassBuilder owner,
+                                              MethodBuilder method, DecoratorDispatch dispatch,
+                                              Function<String, String> implementer, String reflectedId) {
+        if (dispatch != DecoratorDispatch.REFLECTIVE) {
+            Set<String> declaringTypes = allDeclaringTypes(state, decoratedTypeId, method.getSignature());
+            if (declaringTypes.size() == 1) {
+                return method.delegateMethod(implementer.apply(declaringTypes.iterator().next()));
+            }
+        }
+        return makeReflectedDelegate(owner, method, reflectedId);
     }
 
-    // Implement the given method by providing reflective arguments to the delegateId
-    private static MethodBuilder makeReflectedDelegate(MethodBuilder method, String delegateId) {
+    // The implementer of the given type below a decorator, which is added to the types it forwards to if needed
+    private static String previousImplementer(List<String> forwardedTypes, String type) {
+        if (!forwardedTypes.contains(type))
+            forwardedTypes.add(type);
+        return PREVIOUS_IMPLEMENTER.formatted(type, forwardedTypes.indexOf(type));
+    }
+
+    // The implementer of the given type at the top of a wrapper's chain, which is added to its top types if needed
+    private static String topImplementer(List<String> topTypes, String type) {
+        if (!topTypes.contains(type))
+            topTypes.add(type);
+        return TOP_IMPLEMENTER.formatted(type, topTypes.indexOf(type));
+    }
+
+    // Find the types that first declared the given method, for all objects that may share a decorator chain with
+    // decorators of the given type, i.e. extend the declaring types with the ones that they are combined with in
+    // decorable subtypes
+    private static Set<String> allDeclaringTypes(TranspilerState state, String typeId, MethodSignature signature) {
+        Set<String> result = declaringTypes(state, typeId, signature);
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (var entry : state.getSources().entrySet()) {
+                InterfaceBuilder type = state.lookupInterface(entry.getKey());
+                if (type == null || !entry.getValue().accept(new IsDecorableVisitor()) ||
+                    type.getMethods().stream().noneMatch(m -> m.getSignature().equals(signature)))
+                    continue;
+                Set<String> other = declaringTypes(state, entry.getKey(), signature);
+                if (other.stream().anyMatch(result::contains))
+                    changed |= result.addAll(other);
+            }
+        }
+        return result;
+    }
+
+    // Find the decorable types, among the given type and its super types, that first declared the given method
+    private static Set<String> declaringTypes(TranspilerState state, String typeId, MethodSignature signature) {
+        Set<String> result = new LinkedHashSet<>();
+        for (Code superId : state.lookupInterface(typeId).getExtendedInterfaces()) {
+            String id = superId.toCode();
+            ProgramContext source = state.lookupSource(id);
+            InterfaceBuilder superInterface = state.lookupInterface(id);
+            if (source == null || superInterface == null || !source.accept(new IsDecorableVisitor()))
+                continue;
+            if (superInterface.getMethods().stream().anyMatch(m -> m.getSignature().equals(signature)))
+                result.addAll(declaringTypes(state, id, signature));
+        }
+        if (result.isEmpty())
+            result.add(typeId);
+        return result;
+    }
+
+    // Implement the given method by invoking the invoker that the given runtime method returns for it. The type of the
+    // method is stored in a constant in the given class, and the invoker is called with invokeExact, so that neither
+    // the arguments nor the return value are boxed.
+    private static MethodBuilder makeReflectedDelegate(ClassBuilder owner, MethodBuilder method, String invokerId) {
         MethodBuilder result = new MethodBuilder()
                 .setIdentifier(method.getIdentifier())
                 .setReturnType(method.getReturnType());
         method.getModifiers().forEach(result::addModifier);
+        method.getParameters().forEach(result::addParameter);
+
+        String returnType = method.getReturnType().toCode();
+        String methodId = method.getIdentifier().toCode();
+        String typeId = constantId(owner, methodId, "Type");
+        CodeBuilder type = new CodeBuilder().append("java.lang.invoke.MethodType.methodType(").beginDelimiter(", ")
+                                            .append(classLiteral(returnType));
+        method.getParameters().forEach(p -> type.append(classLiteral(p.argType())));
+        type.endDelimiter().append(")");
+        owner.addField("private static final java.lang.invoke.MethodType " + typeId + " = " + type.toCode() + ";");
+
+        String exceptionId = Environment.reservedId("e");
+        CodeBuilder call = new CodeBuilder()
+                .beginConditional(!"void".equals(returnType))
+                .append("return (").append(returnType).append(") ")
+                .endConditional()
+                .append(invokerId).append("(\"").append(methodId).append("\", ").append(typeId).append(")")
+                .append(".invokeExact(")
+                .beginDelimiter(", ")
+                .append(method.getParameters().stream().map(MethodBuilder.Parameter::argId).toArray(String[]::new))
+                .endDelimiter()
+                .append(");");
+        return result.addStatement("try {")
+                     .addStatement(call)
+                     .addStatement("} catch (Throwable " + exceptionId + ") {")
+                     .addStatement("throw " + DECORATOR_HANDLER_TYPE_ID + ".unchecked(" + exceptionId + ");")
+                     .addStatement("}");
+    }
 
-        String returnType = Environment.boxedId(method.getReturnType().toCode()) + ".class";
-        String methodId = '"' + method.getIdentifier().toCode() + '"';
-        CodeBuilder paramArray = new CodeBuilder().append("new Class[]{").beginDelimiter(", ");
-        CodeBuilder argArray = new CodeBuilder().append("new Object[]{").beginDelimiter(", ");
-        method.getParameters().forEach(p -> {
-            paramArray.append(p.argType() + ".class");
-            argArray.append(p.argId());
-            result.addParameter(p);
-        });
-        paramArray.endDelimiter().append("}");
-        argArray.endDelimiter().append("}");
-
-        CodeBuilder stm = new CodeBuilder();
-        if (!"void".equals(method.getReturnType().toCode())) {
-            stm.append("return ");
-        }
-        stm.append(delegateId)
-           .append("(").beginDelimiter(", ")
-           .append(returnType).append(methodId).append(paramArray).append(argArray)
-           .endDelimiter().append(");");
+    // Implement the given method of a decorator wrapper by invoking the call site of the method with the handler. The
+    // method is described by a constant in the given class, whose index identifies the method in the handler's chain,
+    // and the invoker of the call site is a constant as well so that the JIT can inline the call.
+    private static MethodBuilder makeCallSiteDelegate(ClassBuilder owner, MethodBuilder method) {
+        MethodBuilder result = new MethodBuilder()
+                .setIdentifier(method.getIdentifier())
+                .setReturnType(method.getReturnType());
+        method.getModifiers().forEach(result::addModifier);
+        method.getParameters().forEach(result::addParameter);
+
+        String returnType = method.getReturnType().toCode();
+        String methodId = method.getIdentifier().toCode();
+        String argTypesId = constantId(owner, methodId, "ArgTypes");
+        CodeBuilder argTypes = new CodeBuilder().append("{").beginDelimiter(", ");
+        method.getParameters().forEach(p -> argTypes.append(classLiteral(p.argType())));
+        argTypes.endDelimiter().append("}");
+        owner.addField("private static final Class<?>[] " + argTypesId + " = " + argTypes.toCode() + ";");
+
+        String siteId = constantId(owner, methodId, "Site");
+        long index = owner.getFields().stream().filter(f -> f.toCode().contains(" " + DECORATED_METHOD_TYPE_ID + " "))
+                          .count();
+        owner.addField("private static final %s %s = new %s(%d, \"%s\", %s, %s);".formatted(
+                DECORATED_METHOD_TYPE_ID, siteId, DECORATED_METHOD_TYPE_ID, index, methodId, classLiteral(returnType),
+                argTypesId));
+        String invokerId = constantId(owner, methodId, "Invoker");
+        owner.addField("private static final java.lang.invoke.MethodHandle %s = %s.invoker(%s);".formatted(
+                invokerId, DECORATOR_HANDLER_TYPE_ID, siteId));
+
+        String exceptionId = Environment.reservedId("e");
+        CodeBuilder call = new CodeBuilder()
+                .beginConditional(!"void".equals(returnType))
+                .append("return (").append(returnType).append(") ")
+                .endConditional()
+                .append(invokerId).append(".invokeExact(")
+                .beginDelimiter(", ")
+                .append(DECORATOR_HANDLER_VAR_ID)
+                .append(method.getParameters().stream().map(MethodBuilder.Parameter::argId).toArray(String[]::new))
+                .endDelimiter()
+                .append(");");
+        return result.addStatement("try {")
+                     .addStatement(call)
+                     .addStatement("} catch (Throwable " + exceptionId + ") {")
+                     .addStatement("throw " + DECORATOR_HANDLER_TYPE_ID + ".unchecked(" + exceptionId + ");")
+                     .addStatement("}");
+    }
+
+    // The class literal of the given type, whose type arguments are erased since a class literal can't have any, e.g.
+    // java.util.List.class for java.util.List<String>
+    private static String classLiteral(String type) {
+        int typeArguments = type.indexOf('<');
+        return (typeArguments < 0 ? type : type.substring(0, typeArguments)) + ".class";
+    }
 
-        return result.addStatement(stm);
+    // Create a unique identifier for a constant in the given class that belongs to the given method (which may be
+    // overloaded), e.g. the one holding its argument types
+    private static String constantId(ClassBuilder owner, String methodId, String suffix) {
+        String prefix = Environment.reservedId(methodId + suffix);
+        long overloads = owner.getFields().stream().filter(f -> f.toCode().contains(" " + prefix)).count();
+        return overloads == 0 ? prefix : prefix + overloads;
     }
 
-    private static String decoratorSuperClassId(String decoratedType) {
+    static String decoratorSuperClassId(String decoratedType) {
         return Environment.reservedId(decoratedType + "Decorator");
     }
 
@@ -4,7 +4,9 @@ import grammar.gen.ConfluxParser.*;
 import grammar.gen.ConfluxParserBaseVisitor;
 import grammar.gen.ConfluxParserVisitor;
 import java_builder.*;
+import org.antlr.v4.runtime.ParserRuleContext;
 import transpiler.Environment;
+import transpiler.TranspilerException;
 import transpiler.TranspilerState;
 import transpiler.tasks.AssertPublishableTask;
 import transpiler.tasks.TaskQueue;
@@ -17,17 +19,58 @@ import static transpiler.tasks.TaskQueue.Priority;
 // Transpiles everything related to observers:
 public class ObserverTranspiler extends ConfluxParserBaseVisitor<String> {
     private static final String PUBLISH = Environment.reservedId("publish");
+    private static final String PUBLISH_ALL = Environment.reservedId("publishAll");
     private static final String ADD_SUBSCRIBER = Environment.reservedId("addSubscriber");
     private static final String REMOVE_SUBSCRIBER = Environment.reservedId("removeSubscriber");
+    private static final String ADD_BATCH_SUBSCRIBER = Environment.reservedId("addBatchSubscriber");
+    private static final String REMOVE_BATCH_SUBSCRIBER = Environment.reservedId("removeBatchSubscriber");
+    private static final String ADD_WEAK_SUBSCRIBER = Environment.reservedId("addWeakSubscriber");
+    private static final String ADD_KEYED_SUBSCRIBER = Environment.reservedId("addKeyedSubscriber");
+    private static final String ADD_REPLAYING_SUBSCRIBER = Environment.reservedId("addReplayingSubscriber");
+    private static final String RING_HANDLER = Environment.reservedId("RingEventHandler");
+    private static final String CONFLATING_HANDLER = Environment.reservedId("ConflatingEventHandler");
+    private static final String ASYNC_HANDLER = Environment.reservedId("AsyncEventHandler");
+    private static final String EVENT_HANDLER = Environment.reservedId("EventHandler");
+    private static final String KEYED_HANDLER = Environment.reservedId("KeyedEventHandler");
+    private static final String PARALLEL_HANDLER = Environment.reservedId("ParallelEventHandler");
+    private static final String JOURNALED_HANDLER = Environment.reservedId("JournaledEventHandler");
+    private static final String FLOW_PUBLISHER = Environment.reservedId("FlowPublisher");
+    private static final String EVENT_JOURNAL = Environment.reservedId("EventJournal");
+    // The methods of async publishers that report the state of the mailboxes, which the program can call
+    private static final String QUEUE_DEPTH = "queueDepth";
+    private static final String DROPPED_EVENT_COUNT = "droppedEventCount";
+    // The wait strategies of ring buffers, by the names they have in the source
+    private static final Map<String, String> RING_WAIT_STRATEGIES = new LinkedHashMap<>();
+
+    static {
+        RING_WAIT_STRATEGIES.put("spin", "BUSY_SPIN");
+        RING_WAIT_STRATEGIES.put("yield", "YIELD");
+        RING_WAIT_STRATEGIES.put("park", "PARK");
+    }
+
+    // The overflow policies of bounded async mailboxes, by the names they have in the source
+    private static final Map<String, String> MAILBOX_OVERFLOW_POLICIES = new LinkedHashMap<>();
+
+    static {
+        MAILBOX_OVERFLOW_POLICIES.put("block", "BLOCK");
+        MAILBOX_OVERFLOW_POLICIES.put("dropOldest", "DROP_OLDEST");
+        MAILBOX_OVERFLOW_POLICIES.put("dropNewest", "DROP_NEWEST");
+        MAILBOX_OVERFLOW_POLICIES.put("fail", "FAIL");
+    }
 
     private final TaskQueue taskQueue;
+    private final Map<String, ProgramContext> sources;
+    private final Map<String, Integer> callbackIds;
     private ConfluxParserVisitor<String> expressionTranspiler;
 
     private String typeId;
     private String classId;
 
-    public ObserverTranspiler(TaskQueue taskQueue) {
+    // The sources of the program are used to find the types of weak subscribers, and the event types of their callbacks
+    public ObserverTranspiler(TaskQueue taskQueue, Map<String, ProgramContext> sources) {
         this.taskQueue = taskQueue;
+        this.sources = sources;
+        this.callbackIds = new HashMap<>();
     }
 
     public void setExpressionTranspiler(ConfluxParserVisitor<String> expressionTranspiler) {
@@ -46,35 +89,88 @@ public class ObserverTranspiler extends ConfluxParserBaseVisitor<String> {
 
     @Override
     public String visitTypePublishes(TypePublishesContext ctx) {
-        List<String> eventTypes = ctx.type().stream().map(TypeContext::getText).map(Environment::boxedId).toList();
+        List<String> eventTypes = ctx.publishedType().stream().map(PublishedTypeContext::type)
+                                     .map(TypeContext::getText).map(Environment::boxedId).toList();
+        ctx.publishedType().forEach(publishedType -> ringArguments(publishedType.ringBuffer())); // check the options
+        asyncArguments(ctx.asyncDelivery());
+        ctx.publishedType().forEach(publishedType -> parallelArguments(ctx, publishedType.parallelDelivery()));
+        ctx.publishedType().forEach(publishedType -> journalArguments(ctx, publishedType.eventJournal()));
+        List<String> keyedEventTypes = ctx.publishedType().stream().filter(type -> type.eventKey() != null)
+                                          .map(ObserverTranspiler::keyedEventType).toList();
+        List<String> journaledEventTypes = ctx.publishedType().stream().filter(type -> type.eventJournal() != null)
+                                              .map(type -> Environment.boxedId(type.type().getText())).toList();
+        boolean mailboxes = !mailboxEventTypes(ctx).isEmpty();
+        if (mailboxes)
+            assertNotDeclared((TypeDeclarationContext) ctx.getParent(), QUEUE_DEPTH, DROPPED_EVENT_COUNT);
 
         taskQueue.addTask(Priority.CHECK_PUBLISHABLE, new AssertPublishableTask(typeId, eventTypes));
-        taskQueue.addTask(Priority.MAKE_OBSERVER_INTERFACES, new PublisherInterfaceTask(typeId, eventTypes));
+        taskQueue.addTask(Priority.MAKE_OBSERVER_INTERFACES,
+                          new PublisherInterfaceTask(typeId, eventTypes, keyedEventTypes, journaledEventTypes,
+                                                     mailboxes));
+        taskQueue.addTask(Priority.MAKE_OBSERVER_INTERFACES, new SerializableEventTypesTask(journaledEventTypes));
         taskQueue.addTask(Priority.MAKE_OBSERVER_INTERFACES, new CallbackInterfaceTask(eventTypes));
         taskQueue.addTask(Priority.MAKE_OBSERVER_CLASSES, new PublisherClassTask(typeId, classId));
         return "";
     }
 
+    // The event types of an async publisher that are delivered through mailboxes, i.e. by an _AsyncEventHandler
+    private static List<String> mailboxEventTypes(TypePublishesContext publishes) {
+        if (publishes.asyncDelivery() == null)
+            return List.of();
+        return publishes.publishedType().stream()
+                        .filter(type -> type.ringBuffer() == null && type.latestKeyword() == null)
+                        .map(type -> Environment.boxedId(type.type().getText())).toList();
+    }
+
+    // The methods that are generated for a publisher and can be called by the program can't be declared by its type
+    private static void assertNotDeclared(TypeDeclarationContext type, String... methodIds) {
+        for (MethodSignatureContext signature : type.typeBody().interfaceBlock().methodSignature()) {
+            if (Arrays.asList(methodIds).contains(signature.methodId().getText()))
+                throw new TranspilerException("The method " + signature.methodId().getText() + " of " +
+                                              type.Identifier().getText() + " is generated for async publishers");
+        }
+    }
+
+    // Primitive events and arrays have no methods that could return their key
+    private static String keyedEventType(PublishedTypeContext publishedType) {
+        String eventType = Environment.boxedId(publishedType.type().getText());
+        if (primitiveEventType(eventType) != null || eventType.contains("["))
+            throw new TranspilerException("Events of type " + publishedType.type().getText() + " can't be keyed");
+        return eventType;
+    }
+
+    // "publish all" publishes the elements of an array as one batch, the explicit event types are the types of the
+    // elements
     @Override
     public String visitPublishStatement(PublishStatementContext ctx) {
         String event = ctx.expression().accept(expressionTranspiler);
+        boolean all = ctx.allKeyword() != null;
         if (ctx.explicitEventTypes() == null) {
-            return makePublishCall(event, null);
+            return makePublishCall(all, event, null);
         } else if (ctx.explicitEventTypes().type().size() == 1) {
-            return makePublishCall(event, Environment.boxedId(ctx.explicitEventTypes().type(0).getText()));
+            return makePublishCall(all, event, publishedType(all, ctx.explicitEventTypes().type(0)));
         } else {
             StringBuilder builder = new StringBuilder().append("{");
             ctx.explicitEventTypes().type().forEach(type -> {
-                String eventType = Environment.boxedId(type.getText());
-                builder.append(makePublishCall(event, eventType));
+                builder.append(makePublishCall(all, event, publishedType(all, type)));
             });
             return builder.append("}").toString();
         }
     }
 
-    private static String makePublishCall(String event, String explicitEventType) {
+    // Arrays of primitive events are published with an overload that takes the primitive array, and int, long and
+    // double events are published without boxing them
+    private static String publishedType(boolean all, TypeContext eventType) {
+        if (all)
+            return eventType.getText() + "[]";
+        String boxed = Environment.boxedId(eventType.getText());
+        String primitive = primitiveEventType(boxed);
+        return primitive == null ? boxed : primitive;
+    }
+
+    private static String makePublishCall(boolean all, String event, String explicitEventType) {
         return new CodeBuilder()
-                .append(PUBLISH).append("(")
+                .append(all ? PUBLISH_ALL : PUBLISH).append("(")
                 .beginConditional(explicitEventType != null)
                 .append("(").append(explicitEventType).append(") ")
                 .endConditional()
@@ -88,32 +184,56 @@ public class ObserverTranspiler extends ConfluxParserBaseVisitor<String> {
         String publisher = ctx.publisherExpression().accept(expressionTranspiler);
         String subscriber = ctx.subscriberExpression().accept(expressionTranspiler);
         String callback = ctx.subscriberCallback().getText();
+        boolean batch = ctx.batchKeyword() != null;
+        boolean weak = ctx.weakKeyword() != null;
+        // "add subscriber s::onEvent for key" subscribes to the events with the given key, and "add subscriber
+        // s::onEvent from offset" replays the journaled events from the given offset on before the published ones
+        String argument = ctx.expression() == null ? null : ctx.expression().accept(expressionTranspiler);
+        boolean replaying = ctx.FROM() != null;
+        if (argument != null && (batch || weak))
+            throw new TranspilerException((replaying ? "A replaying subscriber" : "A subscriber for a key") +
+                                          " can't be a " + (batch ? "batch" : "weak") + " subscriber");
+        String method = weak ? ADD_WEAK_SUBSCRIBER
+                             : replaying ? ADD_REPLAYING_SUBSCRIBER
+                             : argument != null ? ADD_KEYED_SUBSCRIBER
+                             : batch ? ADD_BATCH_SUBSCRIBER
+                             : ADD_SUBSCRIBER;
 
         if (ctx.explicitEventTypes() == null) {
-            return makeAddSubscriberCall(publisher, subscriber, callback, null);
+            String eventType = weak ? weakEventType(ctx.subscriberExpression(), callback) : null;
+            return makeAddSubscriberCall(publisher, subscriber, callback, eventType, method, argument);
         } else if (ctx.explicitEventTypes().type().size() == 1) {
             String eventType = Environment.boxedId(ctx.explicitEventTypes().type().get(0).getText());
-            return makeAddSubscriberCall(publisher, subscriber, callback, eventType);
+            return makeAddSubscriberCall(publisher, subscriber, callback, eventType, method, argument);
         } else {
             StringBuilder builder = new StringBuilder().append("{ ");
             ctx.explicitEventTypes().type().forEach(type -> {
                 String eventType = Environment.boxedId(type.getText());
-                builder.append(makeAddSubscriberCall(publisher, subscriber, callback, eventType));
+                builder.append(makeAddSubscriberCall(publisher, subscriber, callback, eventType, method, argument));
             });
             return builder.append(" }").toString();
         }
     }
 
-    private String makeAddSubscriberCall(String publisher, String subscriber, String callback, String eventType) {
+    // The argument is the key of a keyed subscription or the offset of a replaying one, or null
+    private String makeAddSubscriberCall(String publisher, String subscriber, String callback, String eventType,
+                                         String method, String argument) {
+        if (method.equals(ADD_WEAK_SUBSCRIBER))
+            return makeAddWeakSubscriberCall(publisher, subscriber, callback, eventType);
+        boolean batch = method.equals(ADD_BATCH_SUBSCRIBER);
         eventType = eventType == null ? "" : eventType;
+        argument = argument == null ? "" : argument;
         return new CodeBuilder()
-                .append(publisher).append(".").append(ADD_SUBSCRIBER).append("(")
+                .append(publisher).append(".").append(method).append("(")
                 .beginDelimiter(", ")
                 .append(subscriber)
-                .append('"' + callback + '"')
+                .append(Integer.toString(callbackId(callback)))
+                .beginConditional(!argument.isEmpty())
+                .append(argument)
+                .endConditional()
                 .append(new CodeBuilder()
                         .beginConditional(!eventType.isEmpty())
-                        .append("(").append(subscriberCallbackType(eventType)).append(") ")
+                        .append("(").append(callbackType(eventType, batch)).append(") ")
                         .endConditional()
                         .append(subscriber).append("::").append(callback)
                 ).endDelimiter()
@@ -121,37 +241,156 @@ public class ObserverTranspiler extends ConfluxParserBaseVisitor<String> {
                 .toCode();
     }
 
+    // The callback of a weak subscription only reaches the subscriber through a WeakReference, so that the handler
+    // doesn't keep it reachable. The lambda is cast to the callback type of the event type, which selects the overload.
+    private String makeAddWeakSubscriberCall(String publisher, String subscriber, String callback, String eventType) {
+        String instance = Environment.reservedId("subscriber");
+        String reference = Environment.reservedId("weakSubscriber");
+        String target = Environment.reservedId("target");
+        String event = Environment.reservedId("event");
+        CodeBuilder weakCallback = new CodeBuilder()
+                .append("(").append(subscriberCallbackType(eventType)).append(") ").append(event).append(" -> { ")
+                .append("var ").append(target).append(" = ").append(reference).append(".get(); ")
+                .append("if (").append(target).append(" != null) ")
+                .append(target).append(".").append(callback).append("(").append(event).append("); }");
+        return new CodeBuilder()
+                .append("{ var ").append(instance).append(" = ").append(subscriber).append("; ")
+                .append("var ").append(reference).append(" = new java.lang.ref.WeakReference<>(").append(instance)
+                .append("); ")
+                .append(publisher).append(".").append(ADD_WEAK_SUBSCRIBER).append("(")
+                .beginDelimiter(", ")
+                .append(instance)
+                .append(Integer.toString(callbackId(callback)))
+                .append(weakCallback)
+                .endDelimiter()
+                .append("); }")
+                .toCode();
+    }
+
+    // A lambda doesn't select an overload like a method reference does, so the event type of a weak subscription
+    // without explicit event types is the parameter type of the callback. It's looked up in the declared type of the
+    // subscriber (a variable, parameter or attribute of a type of the program) and its supertypes.
+    private String weakEventType(SubscriberExpressionContext subscriber, String callback) {
+        String subscriberType = declaredType(subscriber.referenceExpression().qualifiedIdentifier());
+        Set<String> eventTypes = new HashSet<>();
+        if (subscriberType != null) {
+            for (String type : supertypes(sources, subscriberType)) {
+                ProgramContext source = sources.get(type);
+                if (source == null || source.typeDeclaration() == null)
+                    continue;
+                InterfaceBlockContext methods = source.typeDeclaration().typeBody().interfaceBlock();
+                for (MethodSignatureContext method : methods.methodSignature()) {
+                    if (method.methodId().getText().equals(callback) && method.variableList() != null
+                            && method.variableList().variable().size() == 1) {
+                        eventTypes.add(Environment.boxedId(method.variableList().variable(0).type().getText()));
+                    }
+                }
+            }
+        }
+        if (eventTypes.size() != 1)
+            throw new TranspilerException("The event type of the weak subscriber callback " + callback +
+                                          " must be given explicitly, e.g. add weak subscriber s::" + callback +
+                                          " (Type)");
+        return eventTypes.iterator().next();
+    }
+
+    // The declared type of the variable, parameter or attribute that the given identifier refers to, or null if it
+    // isn't a plain or "this." qualified identifier, or isn't declared in the program. Variables are looked up in the
+    // statements before the one that contains the identifier, and in the enclosing blocks and method.
+    private static String declaredType(QualifiedIdentifierContext identifier) {
+        if (identifier == null || identifier.Identifier().size() != 1)
+            return null;
+        String name = identifier.Identifier(0).getText();
+        ParserRuleContext child = identifier;
+        for (ParserRuleContext scope = child.getParent(); scope != null; child = scope, scope = child.getParent()) {
+            String type = identifier.THIS() == null ? localType(scope, child, name) : null;
+            if (type == null && scope instanceof TypeDeclarationContext declaration)
+                type = attributeType(declaration.typeBody().attributesBlock(), name);
+            if (type == null && scope instanceof DecoratorDeclarationContext declaration)
+                type = attributeType(declaration.decoratorBody().attributesBlock(), name);
+            if (type != null)
+                return type;
+        }
+        return null;
+    }
+
+    // The type of the given local variable or parameter declared in the given scope, before its given child
+    private static String localType(ParserRuleContext scope, ParserRuleContext child, String name) {
+        if (scope instanceof ForStatementContext forStatement)
+            return declaredType(forStatement.declaration(), name);
+        if (scope instanceof MethodDeclarationContext method)
+            return parameterType(method.variableList(), name);
+        if (scope instanceof ConstructorDeclarationContext constructor) {
+            String type = parameterType(constructor.variableList(), name);
+            if (type != null)
+                return type;
+        }
+        if (scope instanceof MainBlockContext main && main.Identifier().getText().equals(name))
+            return main.type().getText();
+        String type = null;
+        for (StatementContext statement : scope.getRuleContexts(StatementContext.class)) {
+            if (statement == child)
+                break;
+            if (statement.javaStatement() != null && statement.javaStatement().declaration() != null) {
+                String declared = declaredType(statement.javaStatement().declaration(), name);
+                type = declared == null ? type : declared;
+            }
+        }
+        return type;
+    }
+
+    private static String declaredType(DeclarationContext declaration, String name) {
+        boolean declares = declaration.declarationPart().stream().anyMatch(p -> p.Identifier().getText().equals(name));
+        return declares ? declaration.type().getText() : null;
+    }
+
+    private static String parameterType(VariableListContext parameters, String name) {
+        if (parameters == null)
+            return null;
+        return parameters.variable().stream().filter(p -> p.variableId().getText().equals(name))
+                         .map(p -> p.type().getText()).findFirst().orElse(null);
+    }
+
+    private static String attributeType(AttributesBlockContext attributes, String name) {
+        if (attributes == null)
+            return null;
+        return attributes.attributeDeclaration().stream().map(a -> declaredType(a.declaration(), name))
+                         .filter(Objects::nonNull).findFirst().orElse(null);
+    }
+
     @Override
     public String visitRemoveSubscriberStatement(RemoveSubscriberStatementContext ctx) {
         String publisher = ctx.publisherExpression().accept(expressionTranspiler);
         String subscriber = ctx.subscriberExpression().accept(expressionTranspiler);
         String callback = ctx.subscriberCallback().getText();
+        boolean batch = ctx.batchKeyword() != null;
 
         if (ctx.explicitEventTypes() == null) {
-            return makeRemoveSubscriberCall(publisher, subscriber, callback, null);
+            return makeRemoveSubscriberCall(publisher, subscriber, callback, null, batch);
         } else if (ctx.explicitEventTypes().type().size() == 1) {
             String eventType = Environment.boxedId(ctx.explicitEventTypes().type().get(0).getText());
-            return makeRemoveSubscriberCall(publisher, subscriber, callback, eventType);
+            return makeRemoveSubscriberCall(publisher, subscriber, callback, eventType, batch);
         } else {
             StringBuilder builder = new StringBuilder().append("{ ");
             ctx.explicitEventTypes().type().forEach(type -> {
                 String eventType = Environment.boxedId(type.getText());
-                builder.append(makeRemoveSubscriberCall(publisher, subscriber, callback, eventType));
+                builder.append(makeRemoveSubscriberCall(publisher, subscriber, callback, eventType, batch));
             });
             return builder.append(" }").toString();
         }
     }
 
-    private String makeRemoveSubscriberCall(String publisher, String subscriber, String callback, String eventType) {
+    private String makeRemoveSubscriberCall(String publisher, String subscriber, String callback, String eventType,
+                                            boolean batch) {
         eventType = eventType == null ? "" : eventType;
         return new CodeBuilder()
-                .append(publisher).append(".").append(REMOVE_SUBSCRIBER).append("(")
+                .append(publisher).append(".").append(batch ? REMOVE_BATCH_SUBSCRIBER : REMOVE_SUBSCRIBER).append("(")
                 .beginDelimiter(", ")
                 .append(subscriber)
-                .append('"' + callback + '"')
+                .append(Integer.toString(callbackId(callback)))
                 .append(new CodeBuilder()
                         .beginConditional(!eventType.isEmpty())
-                        .append("(").append(subscriberCallbackType(eventType)).append(") ")
+                        .append("(").append(callbackType(eventType, batch)).append(") ")
                         .endConditional()
                         .append(subscriber).append("::").append(callback)
                 ).endDelimiter()
@@ -159,13 +398,57 @@ public class ObserverTranspiler extends ConfluxParserBaseVisitor<String> {
                 .toCode();
     }
 
+    // A subscription is identified by the subscriber and the id of its callback's name, so that the handlers compare
+    // ints instead of strings. The ids are numbered in the order the names are first seen, and are the same for all
+    // the statements of the program that subscribe or unsubscribe a callback with that name.
+    private int callbackId(String callbackName) {
+        return callbackIds.computeIfAbsent(callbackName, name -> callbackIds.size());
+    }
+
     // Create the name of the event handler instance variable that the publisher uses
     private static String eventHandlerId(String eventType) {
         return Environment.reservedId(makeTypeId(eventType) + "Handler");
     }
-    // Create the identifier of the interface for subscriber callbacks for the given event
+    // Create the name of the method that returns the event handler, creating it if necessary
+    private static String eventHandlerGetterId(String eventType) {
+        return Environment.reservedId("get" + makeTypeId(eventType) + "Handler");
+    }
+    // Create the identifier of the interface for subscriber callbacks for the given event, e.g. _IntCallback for int
     private static String subscriberCallbackType(String eventType) {
-        return Environment.reservedId(makeTypeId(eventType) + "Callback");
+        String primitive = primitiveTypeId(eventType);
+        return Environment.reservedId((primitive == null ? makeTypeId(eventType) : primitive) + "Callback");
+    }
+    // Create the identifier of the interface for batch subscriber callbacks, which receive a List of events
+    private static String batchCallbackType(String eventType) {
+        return Environment.reservedId(makeTypeId(eventType) + "BatchCallback");
+    }
+
+    private static String callbackType(String eventType, boolean batch) {
+        return batch ? batchCallbackType(eventType) : subscriberCallbackType(eventType);
+    }
+
+    // The primitive type of the event types that are published and delivered without boxing, or null. Event types are
+    // identified by their boxed type (so int and Integer are the same event type), but int, long and double events are
+    // published to primitive callbacks like IntConsumer.
+    private static String primitiveEventType(String eventType) {
+        return switch (eventType) {
+            case "Integer" -> "int";
+            case "Long" -> "long";
+            case "Double" -> "double";
+            default -> null;
+        };
+    }
+
+    // The primitive event type with a capital first letter as used in identifiers, e.g. Int for Integer, or null
+    private static String primitiveTypeId(String eventType) {
+        String primitive = primitiveEventType(eventType);
+        return primitive == null ? null : Character.toUpperCase(primitive.charAt(0)) + primitive.substring(1);
+    }
+
+    // The callbacks of primitive event types are primitive functional interfaces, e.g. IntConsumer
+    private static String callbackSuperType(String eventType) {
+        String primitive = primitiveTypeId(eventType);
+        return primitive == null ? "Consumer<" + eventType + ">" : primitive + "Consumer";
     }
 
     private static String makeTypeId(String id) {
@@ -182,7 +465,9 @@ public class ObserverTranspiler extends ConfluxParserBaseVisitor<String> {
     ///////////////////////////////////////// Observer tasks /////////////////////////////////////////////////
 
     // Add methods to the publisher interfaces
-    private record PublisherInterfaceTask(String typeId, List<String> eventTypes) implements TranspilerTask {
+    private record PublisherInterfaceTask(String typeId, List<String> eventTypes, List<String> keyedEventTypes,
+                                          List<String> journaledEventTypes, boolean mailboxes)
+            implements TranspilerTask {
         @Override
         public void run(TranspilerState state) {
             InterfaceBuilder publisher = typeId == null ? null : state.lookupInterface(typeId);
@@ -190,8 +475,53 @@ public class ObserverTranspiler extends ConfluxParserBaseVisitor<String> {
                 return;
             for (String eventType : eventTypes) {
                 publisher.addMethod(publishMethod(eventType))
+                         .addMethod(publishAllMethod(eventType))
                          .addMethod(addSubscriberMethod(eventType))
-                         .addMethod(removeSubscriberMethod(eventType));
+                         .addMethod(removeSubscriberMethod(eventType))
+                         .addMethod(addBatchSubscriberMethod(eventType))
+                         .addMethod(removeBatchSubscriberMethod(eventType))
+                         .addMethod(addWeakSubscriberMethod(eventType))
+                         .addMethod(flowPublisherMethod(eventType));
+                if (isBoxedPrimitive(eventType)) {
+                    publisher.addMethod(publishAllPrimitivesMethod(eventType));
+                }
+                if (keyedEventTypes.contains(eventType)) {
+                    publisher.addMethod(addKeyedSubscriberMethod(eventType));
+                }
+                if (journaledEventTypes.contains(eventType)) {
+                    publisher.addMethod(addReplayingSubscriberMethod(eventType));
+                }
+            }
+            if (mailboxes) {
+                publisher.addMethod(queueDepthMethod())
+                         .addMethod(droppedEventCountMethod());
+            }
+        }
+    }
+
+    // The events of journaled types are serialized, so the interfaces of the journaled types that are Conflux types
+    // extend Serializable, and so do the interfaces of their attributes' types. Other event types, e.g. String, must
+    // be serializable already, otherwise publishing their events fails.
+    private record SerializableEventTypesTask(List<String> eventTypes) implements TranspilerTask {
+        private static final String SERIALIZABLE = "java.io.Serializable";
+
+        @Override
+        public void run(TranspilerState state) {
+            Deque<String> types = new ArrayDeque<>(eventTypes);
+            Set<String> visited = new HashSet<>();
+            while (!types.isEmpty()) {
+                String type = types.pop().replaceAll("[\\[\\]]", "");
+                InterfaceBuilder typeInterface = state.lookupInterface(type);
+                if (!visited.add(type) || typeInterface == null)
+                    continue;
+                if (typeInterface.getExtendedInterfaces().stream().noneMatch(i -> i.toCode().equals(SERIALIZABLE)))
+                    typeInterface.addExtendedInterface(SERIALIZABLE);
+                ProgramContext source = state.lookupSource(type);
+                TypeDeclarationContext declaration = source == null ? null : source.typeDeclaration();
+                if (declaration == null || declaration.typeBody().attributesBlock() == null)
+                    continue;
+                declaration.typeBody().attributesBlock().attributeDeclaration()
+                           .forEach(attribute -> types.push(attribute.declaration().type().getText()));
             }
         }
     }
@@ -203,11 +533,22 @@ public class ObserverTranspiler extends ConfluxParserBaseVisitor<String> {
             for (String eventType : eventTypes) {
                 String callbackType = subscriberCallbackType(eventType);
                 if (!state.doesJavaIdExist(callbackType)) {
+                    String superType = callbackSuperType(eventType);
                     state.addInterface(new InterfaceBuilder()
-                            .addImport("java.util.function.Consumer")
+                            .addImport("java.util.function." + superType.replaceAll("<.*", ""))
                             .addModifier("public")
                             .setIdentifier(callbackType)
-                            .addExtendedInterface("Consumer<" + eventType + ">")
+                            .addExtendedInterface(superType)
+                    );
+                }
+                String batchCallbackType = batchCallbackType(eventType);
+                if (!state.doesJavaIdExist(batchCallbackType)) {
+                    state.addInterface(new InterfaceBuilder()
+                            .addImport("java.util.List")
+                            .addImport("java.util.function.Consumer")
+                            .addModifier("public")
+                            .setIdentifier(batchCallbackType)
+                            .addExtendedInterface("Consumer<List<" + eventType + ">>")
                     );
                 }
             }
@@ -222,51 +563,418 @@ public class ObserverTranspiler extends ConfluxParserBaseVisitor<String> {
             if (publisher == null)
                 return;
 
-            List<String> eventTypes = getEventTypes(state);
-            for (String eventType : eventTypes) {
+            TypePublishesContext publishes = state.lookupSource(typeId).typeDeclaration().typePublishes();
+            boolean async = publishes.asyncDelivery() != null;
+            Map<String, List<PublishedTypeContext>> dispatchTable = dispatchTable(state, publishes);
+            for (PublishedTypeContext publishedType : publishes.publishedType()) {
+                String eventType = Environment.boxedId(publishedType.type().getText());
                 String handlerId = eventHandlerId(eventType);
+                String getterId = eventHandlerGetterId(eventType);
+                String handlerType = handlerType(eventType, async, publishedType);
+                boolean journaled = publishedType.eventJournal() != null;
 
+                // The other handlers box primitive events, their callbacks are adapted to Consumer
+                boolean unboxed = handlerType.equals(primitiveHandlerType(eventType));
+                String adapter = primitiveEventType(eventType) != null && !unboxed ? "::accept" : "";
+                MethodBuilder addSubMethod = addSubscriberMethod(eventType).setGenerateBody(true);
+                addSubMethod.addStatement("%s().%s(%s, %s, %s%s);".formatted(
+                        getterId,
+                        ADD_SUBSCRIBER,
+                        addSubMethod.getParameters().get(0).argId(),
+                        addSubMethod.getParameters().get(1).argId(),
+                        addSubMethod.getParameters().get(2).argId(),
+                        adapter
+                ));
+                MethodBuilder addWeakSubMethod = addWeakSubscriberMethod(eventType).setGenerateBody(true);
+                addWeakSubMethod.addStatement("%s().%s(%s, %s, %s%s);".formatted(
+                        getterId,
+                        ADD_WEAK_SUBSCRIBER,
+                        addWeakSubMethod.getParameters().get(0).argId(),
+                        addWeakSubMethod.getParameters().get(1).argId(),
+                        addWeakSubMethod.getParameters().get(2).argId(),
+                        adapter
+                ));
                 MethodBuilder removeSubMethod = removeSubscriberMethod(eventType).setGenerateBody(true);
                 removeSubMethod.addStatement("%s.%s(%s, %s);".formatted(
-                        eventHandlerId(eventType),
+                        handlerId,
                         REMOVE_SUBSCRIBER,
                         removeSubMethod.getParameters().get(0).argId(),
                         removeSubMethod.getParameters().get(1).argId()
                 ));
-                publisher.addField(handlerVariable(eventType))
-                         .addMethod(publishMethod(eventType).delegateMethod(handlerId))
-                         .addMethod(addSubscriberMethod(eventType).delegateMethod(handlerId))
-                         .addMethod(removeSubMethod);
+                MethodBuilder removeBatchSubMethod = removeBatchSubscriberMethod(eventType).setGenerateBody(true);
+                removeBatchSubMethod.addStatement("%s.%s(%s, %s);".formatted(
+                        handlerId,
+                        REMOVE_SUBSCRIBER,
+                        removeBatchSubMethod.getParameters().get(0).argId(),
+                        removeBatchSubMethod.getParameters().get(1).argId()
+                ));
+                publisher.addField(handlerField(eventType, handlerType))
+                         .addMethod(handlerGetter(eventType, handlerType, handlerArguments(publishes, publishedType)))
+                         .addMethod(dispatch(publishMethod(eventType), dispatchTable.get(eventType)))
+                         .addMethod(dispatch(publishAllMethod(eventType), dispatchTable.get(eventType)))
+                         .addMethod(addSubMethod)
+                         .addMethod(ifSubscribed(eventType, removeSubMethod))
+                         .addMethod(addBatchSubscriberMethod(eventType).delegateMethod(getterId + "()"))
+                         .addMethod(ifSubscribed(eventType, removeBatchSubMethod))
+                         .addMethod(addWeakSubMethod)
+                         .addMethod(flowPublisherImplementation(eventType));
+                if (unboxed) {
+                    publisher.addMethod(ifSubscribed(eventType,
+                                                     publishAllPrimitivesMethod(eventType).delegateMethod(handlerId)));
+                } else if (journaled && isBoxedPrimitive(eventType)) {
+                    publisher.addMethod(publishAllPrimitivesImplementation(eventType, getterId + "()"));
+                } else if (isBoxedPrimitive(eventType)) {
+                    publisher.addMethod(ifSubscribed(eventType,
+                                                     publishAllPrimitivesImplementation(eventType, handlerId)));
+                }
+                if (publishedType.eventKey() != null) {
+                    publisher.addMethod(addKeyedSubscriberMethod(eventType).delegateMethod(getterId + "()"));
+                }
+                if (journaled) {
+                    MethodBuilder addReplayingSubMethod = addReplayingSubscriberMethod(eventType).setGenerateBody(true);
+                    addReplayingSubMethod.addStatement("%s().%s(%s, %s, %s, %s%s);".formatted(
+                            getterId,
+                            ADD_REPLAYING_SUBSCRIBER,
+                            addReplayingSubMethod.getParameters().get(0).argId(),
+                            addReplayingSubMethod.getParameters().get(1).argId(),
+                            addReplayingSubMethod.getParameters().get(2).argId(),
+                            addReplayingSubMethod.getParameters().get(3).argId(),
+                            adapter
+                    ));
+                    publisher.addMethod(addReplayingSubMethod);
+                }
+            }
+            List<String> mailboxEventTypes = mailboxEventTypes(publishes);
+            if (!mailboxEventTypes.isEmpty()) {
+                publisher.addMethod(sumOfHandlers(queueDepthMethod(), mailboxEventTypes))
+                         .addMethod(sumOfHandlers(droppedEventCountMethod(), mailboxEventTypes));
             }
-        }
-
-        private List<String> getEventTypes(TranspilerState state) {
-            return state.lookupSource(typeId).typeDeclaration().typePublishes().type()
-                        .stream().map(TypeContext::getText).map(Environment::boxedId).toList();
         }
     }
 
     ////////////////////////////////////// Generated Publisher Methods/Fields ///////////////////////////////////////
 
-    private static Code handlerVariable(String eventType) {
-        String handlerType = Environment.reservedId("EventHandler") + "<" + eventType + ">";
+    // Event types declared with "ring" use a ring buffer handler and event types declared with "latest" a conflating
+    // handler, the other event types of an async publisher deliver the events on other threads, see
+    // runtime.observers._RingEventHandler, _ConflatingEventHandler and _AsyncEventHandler. Otherwise event types
+    // declared with "keyed", "parallel" and "journaled" have their own handlers (_KeyedEventHandler,
+    // _ParallelEventHandler and _JournaledEventHandler), which box int, long and double events, and the other int, long
+    // and double events have handlers that don't box them, e.g. _IntEventHandler.
+    private static String handlerType(String eventType, boolean async, PublishedTypeContext publishedType) {
+        if (publishedType.ringBuffer() != null)
+            return RING_HANDLER + "<" + eventType + ">";
+        if (publishedType.latestKeyword() != null)
+            return CONFLATING_HANDLER + "<" + eventType + ">";
+        if (async)
+            return ASYNC_HANDLER + "<" + eventType + ">";
+        if (publishedType.eventKey() != null)
+            return KEYED_HANDLER + "<" + eventType + ">";
+        if (publishedType.parallelDelivery() != null)
+            return PARALLEL_HANDLER + "<" + eventType + ">";
+        if (publishedType.eventJournal() != null)
+            return JOURNALED_HANDLER + "<" + eventType + ">";
+        String primitiveHandler = primitiveHandlerType(eventType);
+        return primitiveHandler != null ? primitiveHandler : EVENT_HANDLER + "<" + eventType + ">";
+    }
+
+    // The handler for an event type that is published without boxing, e.g. _IntEventHandler, or null
+    private static String primitiveHandlerType(String eventType) {
+        String primitive = primitiveTypeId(eventType);
+        return primitive == null ? null : Environment.reservedId(primitive + "EventHandler");
+    }
+
+    // The handler is created when the first subscriber is added, so publishers that never get a subscriber don't need
+    // one. It isn't serialized with publishers that are the events of a journaled type.
+    private static Code handlerField(String eventType, String handlerType) {
         return new CodeBuilder()
-                .beginDelimiter(" ")
-                .append("private final")
-                .append(handlerType)
-                .append(eventHandlerId(eventType))
-                .append("= new")
-                .append(handlerType)
+                .append("private transient volatile ")
+                .append(handlerType).append(" ")
+                .append(eventHandlerId(eventType)).append(";");
+    }
+
+    // Return the handler, creating it if it doesn't exist yet
+    private static MethodBuilder handlerGetter(String eventType, String handlerType, String arguments) {
+        String handlerId = eventHandlerId(eventType);
+        return new MethodBuilder()
+                .addModifier("private")
+                .setReturnType(handlerType)
+                .setIdentifier(eventHandlerGetterId(eventType))
+                .addStatement("if (%s == null) {".formatted(handlerId))
+                .addStatement("synchronized (this) {")
+                .addStatement("if (%s == null)".formatted(handlerId))
+                .addStatement("%s = new %s(%s);".formatted(handlerId, handlerType, arguments))
+                .addStatement("}")
+                .addStatement("}")
+                .addStatement("return %s;".formatted(handlerId));
+    }
+
+    // Without a handler there is no subscriber to publish to or to remove. Once created, the handler is never reset,
+    // so the method can read it again after the check.
+    private static MethodBuilder ifSubscribed(String eventType, MethodBuilder implementation) {
+        return implementation.addStatement(0, "if (%s == null)".formatted(eventHandlerId(eventType)))
+                             .addStatement(1, "return;");
+    }
+
+    // The dispatch table of a publisher maps each published event type to the event types whose handlers receive its
+    // events: the type itself, followed by the supertypes declared in the program that the publisher publishes too,
+    // nearest first. It is computed at compile time, so publishing an event reaches the subscribers of its supertypes
+    // without checking its type at runtime. The event types are the static types of the published expressions, which
+    // select the _publish overload.
+    private static Map<String, List<PublishedTypeContext>> dispatchTable(TranspilerState state,
+                                                                         TypePublishesContext publishes) {
+        Map<String, PublishedTypeContext> published = new LinkedHashMap<>();
+        publishes.publishedType().forEach(type -> published.put(Environment.boxedId(type.type().getText()), type));
+        Map<String, List<PublishedTypeContext>> table = new HashMap<>();
+        for (String eventType : published.keySet()) {
+            table.put(eventType, supertypes(state.getSources(), eventType).stream().filter(published::containsKey)
+                                                             .map(published::get).toList());
+        }
+        return table;
+    }
+
+    // The given type and its supertypes declared in the program, breadth first
+    private static Set<String> supertypes(Map<String, ProgramContext> sources, String typeId) {
+        Set<String> supertypes = new LinkedHashSet<>();
+        Deque<String> pending = new ArrayDeque<>(List.of(typeId));
+        while (!pending.isEmpty()) {
+            String type = pending.removeFirst();
+            ProgramContext source = sources.get(type);
+            TypeDeclarationContext declaration = source == null ? null : source.typeDeclaration();
+            if (supertypes.add(type) && declaration != null && declaration.typeExtend() != null)
+                declaration.typeExtend().Identifier().forEach(supertype -> pending.addLast(supertype.getText()));
+        }
+        return supertypes;
+    }
+
+    // Implement a publish method by passing its arguments to the handlers of the given event types, see dispatchTable.
+    // The events of a journaled type are journaled even while there is no subscriber, so publishing them creates the
+    // handler, the other handlers only receive the events once they exist.
+    private static MethodBuilder dispatch(MethodBuilder method, List<PublishedTypeContext> eventTypes) {
+        String call = new CodeBuilder()
+                .append(method.getIdentifier().toCode()).append("(")
+                .beginDelimiter(", ")
+                .append(method.getParameters().stream().map(MethodBuilder.Parameter::argId).toArray(String[]::new))
                 .endDelimiter()
-                .append("();");
+                .append(");")
+                .toCode();
+        method.setGenerateBody(true);
+        for (PublishedTypeContext publishedType : eventTypes) {
+            String eventType = Environment.boxedId(publishedType.type().getText());
+            if (publishedType.eventJournal() != null) {
+                method.addStatement(eventHandlerGetterId(eventType) + "()." + call);
+            } else {
+                method.addStatement("if (%s != null)".formatted(eventHandlerId(eventType)))
+                      .addStatement(eventHandlerId(eventType) + "." + call);
+            }
+        }
+        return method;
+    }
+
+    private static String handlerArguments(TypePublishesContext publishes, PublishedTypeContext publishedType) {
+        if (publishedType.ringBuffer() != null)
+            return ringArguments(publishedType.ringBuffer());
+        if (publishedType.latestKeyword() != null)
+            return "";
+        if (publishedType.parallelDelivery() != null)
+            return parallelArguments(publishes, publishedType.parallelDelivery());
+        if (publishedType.eventJournal() != null)
+            return journalArguments(publishes, publishedType.eventJournal());
+        String arguments = asyncArguments(publishes.asyncDelivery());
+        if (publishedType.eventKey() == null)
+            return arguments;
+        return (arguments.isEmpty() ? "" : arguments + ", ") + keyFunction(publishedType);
+    }
+
+    // The key of an event declared with "keyed(symbol)" is returned by the event's method symbol, e.g. Trade::symbol
+    private static String keyFunction(PublishedTypeContext publishedType) {
+        String eventType = Environment.boxedId(publishedType.type().getText());
+        return eventType + "::" + publishedType.eventKey().Identifier().getText();
+    }
+
+    // The constructor arguments of an async handler with bounded mailboxes: the capacity and the overflow policy given
+    // as options in any order, e.g. "async(256, dropOldest)". Without options the mailboxes are unbounded.
+    private static String asyncArguments(AsyncDeliveryContext ctx) {
+        if (ctx == null || ctx.deliveryOption().isEmpty())
+            return "";
+        String capacity = null;
+        String overflow = null;
+        for (DeliveryOptionContext option : ctx.deliveryOption()) {
+            if (option.NUMBER() != null) {
+                if (capacity != null)
+                    throw new TranspilerException("Duplicate mailbox capacity '" + option.getText() + "'");
+                capacity = Integer.toString(positiveInt("capacity of a mailbox", option.getText()));
+            } else {
+                if (overflow != null)
+                    throw new TranspilerException("Duplicate mailbox overflow policy '" + option.getText() + "'");
+                overflow = MAILBOX_OVERFLOW_POLICIES.get(option.getText());
+                if (overflow == null) {
+                    throw new TranspilerException("Unknown mailbox overflow policy '" + option.getText() + "', " +
+                                                  "expected " + String.join(", ", MAILBOX_OVERFLOW_POLICIES.keySet()));
+                }
+            }
+        }
+        return (capacity == null ? ASYNC_HANDLER + ".DEFAULT_CAPACITY" : capacity) + ", " +
+               ASYNC_HANDLER + ".Overflow." + (overflow == null ? "BLOCK" : overflow);
+    }
+
+    // The constructor argument of a handler that delivers events in parallel: the number of subscribers from which on
+    // it does so, e.g. "parallel(10000)". The events of an async publisher are already delivered on other threads.
+    private static String parallelArguments(TypePublishesContext publishes, ParallelDeliveryContext ctx) {
+        if (ctx == null)
+            return "";
+        if (publishes.asyncDelivery() != null)
+            throw new TranspilerException("The events of an async publisher can't be delivered in parallel");
+        if (ctx.NUMBER() == null)
+            return "";
+        return Integer.toString(positiveInt("parallel threshold", ctx.NUMBER().getText()));
+    }
+
+    // The constructor argument of a journaled handler: the journal in the given directory, optionally with the size of
+    // its segments in bytes and the number of segments that are kept, e.g. "journaled("trades", 1048576, 4)". The
+    // publishers of the type share the journal, unless it's given the attribute of the publisher that names it, e.g.
+    // "journaled("trades", venue)": then the journal is in the subdirectory named after the value of the attribute
+    // when the handler is created, so a publisher finds its journal again after a restart. The events of an async
+    // publisher are delivered by an async handler, which doesn't journal them.
+    private static String journalArguments(TypePublishesContext publishes, EventJournalContext ctx) {
+        if (ctx == null)
+            return "";
+        if (publishes.asyncDelivery() != null)
+            throw new TranspilerException("The events of an async publisher can't be journaled");
+        if (ctx.StringLiteral().getText().equals("\"\""))
+            throw new TranspilerException("The directory of a journal can't be empty");
+        String directory = ctx.Identifier() == null
+                ? "java.nio.file.Path.of(%s)".formatted(ctx.StringLiteral().getText())
+                : "java.nio.file.Path.of(%s, String.valueOf(%s))".formatted(ctx.StringLiteral().getText(),
+                                                                            journalKey(publishes, ctx));
+        if (ctx.NUMBER().isEmpty())
+            return EVENT_JOURNAL + ".open(" + directory + ")";
+        return EVENT_JOURNAL + ".open(" + directory + ", " +
+               positiveInt("segment size of a journal", ctx.NUMBER(0).getText()) + ", " +
+               positiveInt("number of segments of a journal", ctx.NUMBER(1).getText()) + ")";
+    }
+
+    // The key of a journal is an attribute of the publisher
+    private static String journalKey(TypePublishesContext publishes, EventJournalContext ctx) {
+        TypeDeclarationContext type = (TypeDeclarationContext) publishes.getParent();
+        String key = ctx.Identifier().getText();
+        if (attributeType(type.typeBody().attributesBlock(), key) == null)
+            throw new TranspilerException("The key of a journal must be an attribute of " +
+                                          type.Identifier().getText() + ", got '" + key + "'");
+        return Environment.escapeJavaKeyword(key);
+    }
+
+    // The constructor arguments of a ring buffer handler: the capacity and the wait strategy given as options in any
+    // order, e.g. "ring(yield, 4096)", the missing ones get their default values
+    private static String ringArguments(RingBufferContext ctx) {
+        if (ctx == null || ctx.deliveryOption().isEmpty())
+            return "";
+        String capacity = null;
+        String waitStrategy = null;
+        for (DeliveryOptionContext option : ctx.deliveryOption()) {
+            if (option.NUMBER() != null) {
+                if (capacity != null)
+                    throw new TranspilerException("Duplicate ring capacity '" + option.getText() + "'");
+                capacity = ringCapacity(option.getText());
+            } else {
+                if (waitStrategy != null)
+                    throw new TranspilerException("Duplicate ring wait strategy '" + option.getText() + "'");
+                waitStrategy = RING_WAIT_STRATEGIES.get(option.getText());
+                if (waitStrategy == null) {
+                    throw new TranspilerException("Unknown ring wait strategy '" + option.getText() + "', expected " +
+                                                  String.join(", ", RING_WAIT_STRATEGIES.keySet()));
+                }
+            }
+        }
+        return (capacity == null ? RING_HANDLER + ".DEFAULT_CAPACITY" : capacity) + ", " +
+               RING_HANDLER + ".WaitStrategy." + (waitStrategy == null ? "PARK" : waitStrategy);
+    }
+
+    private static String ringCapacity(String number) {
+        int capacity = positiveInt("capacity of a ring", number);
+        if (capacity < 2 || Integer.bitCount(capacity) != 1)
+            throw new TranspilerException("The capacity of a ring must be a power of two, got " + number);
+        return Integer.toString(capacity);
+    }
+
+    // Parse a number given in a publishes clause, which must be a positive int
+    private static int positiveInt(String what, String number) {
+        int value;
+        try {
+            value = Integer.parseInt(number);
+        } catch (NumberFormatException e) {
+            value = -1;
+        }
+        if (value < 1)
+            throw new TranspilerException("The " + what + " must be a positive int, got " + number);
+        return value;
+    }
+
+    // The number of events in the mailboxes of all subscribers of an async publisher, including the events that are
+    // being delivered
+    private static MethodBuilder queueDepthMethod() {
+        return new MethodBuilder(false)
+                .addModifier("public")
+                .setReturnType("long")
+                .setIdentifier(QUEUE_DEPTH);
+    }
+
+    // The number of events that an async publisher dropped because the mailbox of a subscriber was full
+    private static MethodBuilder droppedEventCountMethod() {
+        return new MethodBuilder(false)
+                .addModifier("public")
+                .setReturnType("long")
+                .setIdentifier(DROPPED_EVENT_COUNT);
+    }
+
+    // Implement the method by adding up the results of the handler method of the same name for the given event types,
+    // the event types without a handler have no subscribers yet
+    private static MethodBuilder sumOfHandlers(MethodBuilder method, List<String> eventTypes) {
+        method.setGenerateBody(true)
+              .addStatement("long sum = 0;");
+        for (String eventType : eventTypes) {
+            String handlerId = eventHandlerId(eventType);
+            method.addStatement("if (%s != null)".formatted(handlerId))
+                  .addStatement("sum += %s.%s();".formatted(handlerId, method.getIdentifier().toCode()));
+        }
+        return method.addStatement("return sum;");
     }
 
     private static MethodBuilder publishMethod(String eventType) {
+        String primitive = primitiveEventType(eventType);
         return new MethodBuilder(false)
                 .addModifier("public")
                 .setReturnType("void")
                 .setIdentifier(PUBLISH)
-                .addParameter(eventType, "event");
+                .addParameter(primitive == null ? eventType : primitive, "event");
+    }
+
+    private static MethodBuilder publishAllMethod(String eventType) {
+        return new MethodBuilder(false)
+                .addModifier("public")
+                .setReturnType("void")
+                .setIdentifier(PUBLISH_ALL)
+                .addParameter(eventType + "[]", "events");
+    }
+
+    // The overload of publishAll for primitive events, e.g. publishAll(int[]) for a publisher of int
+    private static MethodBuilder publishAllPrimitivesMethod(String eventType) {
+        return new MethodBuilder(false)
+                .addModifier("public")
+                .setReturnType("void")
+                .setIdentifier(PUBLISH_ALL)
+                .addParameter(Environment.unboxedId(eventType) + "[]", "events");
+    }
+
+    // The handler is an expression that evaluates to the handler
+    private static MethodBuilder publishAllPrimitivesImplementation(String eventType, String handler) {
+        return publishAllPrimitivesMethod(eventType).setGenerateBody(true)
+                .addStatement("%s[] boxed = new %s[events.length];".formatted(eventType, eventType))
+                .addStatement("for (int i = 0; i < events.length; i++) { boxed[i] = events[i]; }")
+                .addStatement("%s.%s(boxed);".formatted(handler, PUBLISH_ALL));
+    }
+
+    private static boolean isBoxedPrimitive(String eventType) {
+        return !Environment.unboxedId(eventType).equals(eventType);
     }
 
     private static MethodBuilder addSubscriberMethod(String eventType) {
@@ -275,7 +983,7 @@ public class ObserverTranspiler extends ConfluxParserBaseVisitor<String> {
                 .setReturnType("void")
                 .setIdentifier(ADD_SUBSCRIBER)
                 .addParameter("Object", "subscriber")
-                .addParameter("String", "callbackName")
+                .addParameter("int", "callbackId")
                 .addParameter(subscriberCallbackType(eventType), "callback");
     }
 
@@ -285,7 +993,80 @@ public class ObserverTranspiler extends ConfluxParserBaseVisitor<String> {
                 .setReturnType("void")
                 .setIdentifier(REMOVE_SUBSCRIBER)
                 .addParameter("Object", "subscriber")
-                .addParameter("String", "callbackName")
+                .addParameter("int", "callbackId")
                 .addParameter(subscriberCallbackType(eventType), Environment.unusedIdentifier());
     }
+
+    private static MethodBuilder addBatchSubscriberMethod(String eventType) {
+        return new MethodBuilder(false)
+                .addModifier("public")
+                .setReturnType("void")
+                .setIdentifier(ADD_BATCH_SUBSCRIBER)
+                .addParameter("Object", "subscriber")
+                .addParameter("int", "callbackId")
+                .addParameter(batchCallbackType(eventType), "callback");
+    }
+
+    private static MethodBuilder removeBatchSubscriberMethod(String eventType) {
+        return new MethodBuilder(false)
+                .addModifier("public")
+                .setReturnType("void")
+                .setIdentifier(REMOVE_BATCH_SUBSCRIBER)
+                .addParameter("Object", "subscriber")
+                .addParameter("int", "callbackId")
+                .addParameter(batchCallbackType(eventType), Environment.unusedIdentifier());
+    }
+
+    private static MethodBuilder addKeyedSubscriberMethod(String eventType) {
+        return new MethodBuilder(false)
+                .addModifier("public")
+                .setReturnType("void")
+                .setIdentifier(ADD_KEYED_SUBSCRIBER)
+                .addParameter("Object", "subscriber")
+                .addParameter("int", "callbackId")
+                .addParameter("Object", "key")
+                .addParameter(subscriberCallbackType(eventType), "callback");
+    }
+
+    private static MethodBuilder addReplayingSubscriberMethod(String eventType) {
+        return new MethodBuilder(false)
+                .addModifier("public")
+                .setReturnType("void")
+                .setIdentifier(ADD_REPLAYING_SUBSCRIBER)
+                .addParameter("Object", "subscriber")
+                .addParameter("int", "callbackId")
+                .addParameter("long", "offset")
+                .addParameter(subscriberCallbackType(eventType), "callback");
+    }
+
+    // A java.util.concurrent.Flow.Publisher of the events of the given type, e.g. _asTradeFlowPublisher
+    private static MethodBuilder flowPublisherMethod(String eventType) {
+        return new MethodBuilder(false)
+                .addModifier("public")
+                .setReturnType("java.util.concurrent.Flow.Publisher<" + eventType + ">")
+                .setIdentifier(Environment.reservedId("as" + makeTypeId(eventType) + "FlowPublisher"));
+    }
+
+    // The Flow subscriptions subscribe to the publisher themselves, so they need no callback id of their own. The casts
+    // select the overloads for the event type.
+    private static MethodBuilder flowPublisherImplementation(String eventType) {
+        String subscription = Environment.reservedId("subscription");
+        String callback = Environment.reservedId("callback");
+        return flowPublisherMethod(eventType).setGenerateBody(true)
+                .addStatement(("return new %1$s<%2$s>((%3$s, %4$s) -> %5$s(%3$s, 0, (%6$s) %4$s::accept), " +
+                               "%3$s -> %7$s(%3$s, 0, (%6$s) null));")
+                        .formatted(FLOW_PUBLISHER, eventType, subscription, callback, ADD_SUBSCRIBER,
+                                   subscriberCallbackType(eventType), REMOVE_SUBSCRIBER));
+    }
+
+    // The callback only holds the subscriber weakly, see makeAddWeakSubscriberCall
+    private static MethodBuilder addWeakSubscriberMethod(String eventType) {
+        return new MethodBuilder(false)
+                .addModifier("public")
+                .setReturnType("void")
+                .setIdentifier(ADD_WEAK_SUBSCRIBER)
+                .addParameter("Object", "subscriber")
+                .addParameter("int", "callbackId")
+                .addParameter(subscriberCallbackType(eventType), "weakCallback");
+    }
 }
@@ -2,7 +2,11 @@ package transpiler.visitors;
 
 import grammar.gen.ConfluxParser;
 import grammar.gen.ConfluxParserBaseVisitor;
+import java_builder.ClassBuilder;
+import java_builder.InterfaceBuilder;
 import java_builder.MethodBuilder;
+import org.antlr.v4.runtime.tree.TerminalNode;
+import transpiler.DecoratorDispatch;
 import transpiler.Environment;
 import transpiler.TranspilerException;
 import transpiler.TranspilerState;
@@ -12,6 +16,8 @@ import transpiler.tasks.TaskQueue;
 import transpiler.tasks.TranspilerTask;
 
 import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 import static grammar.gen.ConfluxParser.*;
 
@@ -27,13 +33,13 @@ public class StartVisitor extends ConfluxParserBaseVisitor<Void> {
     private String typeFileName;
     private boolean generateClass;
 
-    public StartVisitor(TaskQueue taskQ) {
+    public StartVisitor(TaskQueue taskQ, DecoratorDispatch decoratorDispatch, Map<String, ProgramContext> sources) {
         this.taskQ = taskQ;
         ExpressionTranspiler expTranspiler = new ExpressionTranspiler();
 
-        observerTranspiler = new ObserverTranspiler(taskQ);
+        observerTranspiler = new ObserverTranspiler(taskQ, sources);
         statementTranspiler = new StatementTranspiler(expTranspiler);
-        decoratorTranspiler = new DecoratorTranspiler(taskQ, statementTranspiler);
+        decoratorTranspiler = new DecoratorTranspiler(taskQ, statementTranspiler, decoratorDispatch);
         constructorTranspiler = new ConstructorTranspiler(taskQ, statementTranspiler);
         classTranspiler = new ClassTranspiler(taskQ, statementTranspiler);
         interfaceTranspiler = new InterfaceTranspiler(taskQ, statementTranspiler);
@@ -51,6 +57,12 @@ public class StartVisitor extends ConfluxParserBaseVisitor<Void> {
             visitTypeDeclaration(ctx.typeDeclaration());
         else if (ctx.decoratorDeclaration() != null)
             visitDecoratorDeclaration(ctx.decoratorDeclaration());
+        if (!ctx.importDeclaration().isEmpty()) {
+            List<String> imports = ctx.importDeclaration().stream()
+                    .map(imp -> imp.Identifier().stream().map(TerminalNode::getText).collect(Collectors.joining(".")))
+                    .toList();
+            taskQ.addTask(TaskQueue.Priority.ADD_IMPORTS, new AddImportsTask(typeFileName, imports));
+        }
         return null;
     }
 
@@ -123,6 +135,25 @@ public class StartVisitor extends ConfluxParserBaseVisitor<Void> {
         }
     }
 
+    // Add the imports of a source file to the classes and interfaces that are generated from it
+    private record AddImportsTask(String typeId, List<String> imports) implements TranspilerTask {
+        @Override
+        public void run(TranspilerState state) {
+            List<String> javaIds = List.of(typeId, Environment.classId(typeId), Environment.decoratorWrapperId(typeId),
+                                           DecoratorTranspiler.decoratorSuperClassId(typeId));
+            for (String javaId : javaIds) {
+                ClassBuilder classBuilder = state.lookupClass(javaId);
+                InterfaceBuilder interfaceBuilder = state.lookupInterface(javaId);
+                for (String imp : imports) {
+                    if (classBuilder != null)
+                        classBuilder.addImport(imp);
+                    if (interfaceBuilder != null)
+                        interfaceBuilder.addImport(imp);
+                }
+            }
+        }
+    }
+
     // return true if a class should be generated
     private boolean generateClass(TypeBodyContext ctx) {
         return ctx.constructorsBlock() != null || ctx.componentsBlock() != null
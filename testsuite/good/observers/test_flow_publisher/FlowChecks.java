@@ -0,0 +1,81 @@
+package default_package;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+// Subscribes to the Flow publisher of a Ticker and prints what the subscriber receives
+public final class FlowChecks {
+    private static final int BUFFER_SIZE = Flow.defaultBufferSize(); // of the subscriptions of transpiled publishers
+
+    // Records the events and the error, and only requests when it's told to
+    private static final class Recorder implements Flow.Subscriber<Integer> {
+        private final List<Integer> received = new ArrayList<>();
+        private Flow.Subscription subscription;
+        private Throwable error;
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        @Override
+        public void onNext(Integer event) {
+            received.add(event);
+        }
+
+        @Override
+        public void onError(Throwable error) {
+            this.error = error;
+        }
+
+        @Override
+        public void onComplete() {
+            System.out.println("completed");
+        }
+    }
+
+    private static Recorder subscribe(Ticker ticker) {
+        Recorder recorder = new Recorder();
+        ticker._asIntegerFlowPublisher().subscribe(recorder);
+        return recorder;
+    }
+
+    // The events beyond the demand are buffered, and delivered by the thread that requests them
+    public static void checkDemand(Ticker ticker) {
+        Recorder recorder = subscribe(ticker);
+        recorder.subscription.request(2);
+        for (int i = 0; i < 5; i++) {
+            ticker.tick(i);
+        }
+        System.out.println("requested 2 of 5: " + recorder.received);
+        recorder.subscription.request(10);
+        System.out.println("requested 10 more: " + recorder.received);
+        ticker.tick(5);
+        System.out.println("published with demand: " + recorder.received);
+    }
+
+    public static void checkCancellation(Ticker ticker) {
+        Recorder recorder = subscribe(ticker);
+        recorder.subscription.request(10);
+        ticker.tick(1);
+        recorder.subscription.cancel();
+        ticker.tick(2);
+        System.out.println("cancelled after 1: " + recorder.received);
+    }
+
+    // The subscriber never requests, so its buffer overflows with the event after BUFFER_SIZE events
+    public static void checkOverflow(Ticker ticker) {
+        Recorder recorder = subscribe(ticker);
+        for (int i = 0; i < BUFFER_SIZE; i++) {
+            ticker.tick(i);
+        }
+        System.out.println("full buffer: " + (recorder.error == null ? "open" : "failed"));
+        ticker.tick(BUFFER_SIZE);
+        boolean failed = recorder.error instanceof IllegalStateException;
+        System.out.println("overflowed buffer: " + (failed ? "failed" : "open"));
+        recorder.subscription.request(1);
+        ticker.tick(BUFFER_SIZE + 1);
+        System.out.println("failed subscription: " + recorder.received);
+    }
+}
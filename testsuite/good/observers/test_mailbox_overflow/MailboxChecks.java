@@ -0,0 +1,130 @@
+package default_package;
+
+import runtime.observers._AsyncEventHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+// Subscribes to the publishers of the test with subscribers whose first callback blocks until they are released, so
+// that the events published meanwhile fill their mailboxes (with a capacity of 2)
+public final class MailboxChecks {
+    private static final Map<Object, List<Gate>> GATES = new ConcurrentHashMap<>();
+
+    // Records the events it receives, and blocks in the callback of the first one until it's released
+    private static final class Gate {
+        private final String name;
+        private final List<Integer> received = new ArrayList<>();
+        private final CountDownLatch started = new CountDownLatch(1);
+        private final CountDownLatch released = new CountDownLatch(1);
+
+        Gate(String name) {
+            this.name = name;
+        }
+
+        void accept(int value) {
+            synchronized (this) {
+                received.add(value);
+            }
+            started.countDown();
+            await(released);
+        }
+    }
+
+    // The first event blocks the subscriber, the second and third fill its mailbox and the others overflow it
+    public static void publishToBlockedSubscriber(OldestSensor sensor) {
+        Gate gate = subscribe(sensor, new Gate("dropOldest"), sensor::_addSubscriber);
+        publish(sensor::measure, gate);
+    }
+
+    public static void publishToBlockedSubscriber(NewestSensor sensor) {
+        Gate gate = subscribe(sensor, new Gate("dropNewest"), sensor::_addSubscriber);
+        publish(sensor::measure, gate);
+    }
+
+    // Publishing to two blocked subscribers and one that keeps up: the event that overflows both full mailboxes is
+    // still delivered to the third subscriber, and publishing throws for both
+    public static void publishToBlockedSubscribers(FailingSensor sensor) {
+        Gate first = subscribe(sensor, new Gate("fail"), sensor::_addSubscriber);
+        Gate second = subscribe(sensor, new Gate("fail"), sensor::_addSubscriber);
+        BlockingQueue<Integer> received = new LinkedBlockingQueue<>();
+        sensor._addSubscriber(received, 0, received::add);
+        sensor.measure(1);
+        await(first.started);
+        await(second.started);
+        List<Integer> delivered = new ArrayList<>();
+        for (int value = 1; value <= 4; value++) {
+            if (value > 1) {
+                try {
+                    sensor.measure(value);
+                } catch (IllegalStateException e) {
+                    System.out.println("fail: publishing " + value + " failed for " +
+                                       (1 + e.getSuppressed().length) + " subscribers");
+                }
+            }
+            delivered.add(take(received));
+        }
+        System.out.println("fail: the subscriber that keeps up received " + delivered);
+    }
+
+    private interface Subscribe {
+        void add(Object subscriber, int callbackId, _IntCallback callback);
+    }
+
+    private static Gate subscribe(Object publisher, Gate gate, Subscribe subscribe) {
+        subscribe.add(gate, 0, gate::accept);
+        GATES.computeIfAbsent(publisher, __ -> new ArrayList<>()).add(gate);
+        return gate;
+    }
+
+    private static void publish(IntConsumer measure, Gate gate) {
+        measure.accept(1);
+        await(gate.started);
+        for (int value = 2; value <= 5; value++) {
+            measure.accept(value);
+        }
+    }
+
+    // Release the blocked subscribers of the publisher, and print what they received once every event was delivered
+    public static void release(Object publisher) {
+        for (Gate gate : GATES.get(publisher)) {
+            gate.released.countDown();
+        }
+        try {
+            _AsyncEventHandler._awaitAll();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+        for (Gate gate : GATES.get(publisher)) {
+            synchronized (gate) {
+                System.out.println(gate.name + ": the blocked subscriber received " + gate.received);
+            }
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(10, TimeUnit.SECONDS))
+                throw new IllegalStateException("Timed out");
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static int take(BlockingQueue<Integer> queue) {
+        try {
+            Integer value = queue.poll(10, TimeUnit.SECONDS);
+            if (value == null)
+                throw new IllegalStateException("Timed out");
+            return value;
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -76,6 +76,11 @@ doDebug = unsafePerformIO $ newIORef False
 doCmp :: IORef Bool
 doCmp = unsafePerformIO $ newIORef True
 
+-- | Arguments passed to the transpiler for every test, e.g. the decorator dispatch
+{-# NOINLINE transpilerArgs #-}
+transpilerArgs :: IORef [String]
+transpilerArgs = unsafePerformIO $ newIORef []
+
 debug :: String -> IO ()
 debug s = do
   d <- readIORef doDebug
@@ -237,17 +242,18 @@ testBadRuntimeProgram prog f = do
 getTestData :: FilePath -> IO (String, [String])
 getTestData f = do
    isDir <- doesDirectoryExist f
+   extra <- readIORef transpilerArgs
    if isDir then do
       output <- getFilesWith ".output" f >>= readFirstIfExists
-      args   <- getFilesWith ".flux" f
+      args   <- (++) <$> getFilesWith ".flux" f <*> getFilesWith ".java" f
       let destination = transpiler_output </> f
       createDirectoryIfMissing True destination
-      return (output, "-o" : destination : args)
+      return (output, extra ++ "-o" : destination : args)
    else do
       output <- readFileIfExists $ f ++ ".output"
       let destination = transpiler_output </> takeWhile (/= '.') f
       createDirectoryIfMissing True destination
-      return (output, ["-o", destination, f])
+      return (output, extra ++ ["-o", destination, f])
    where
       readFirstIfExists (f:_) = readFileIfExists f
       readFirstIfExists _     = return ""
@@ -274,6 +280,8 @@ data Options = Options
   , makeFlag        :: Bool
   , cmpFlag         :: Bool
   , testSuiteOption :: Maybe TestSuite
+  , decoratorOption :: Maybe String
+      -- ^ Decorator dispatch passed to the transpiler
   }
 
 enableDebug :: Options -> Options
@@ -288,6 +296,9 @@ disableMake options = options { makeFlag = False }
 disableCmp :: Options -> Options
 disableCmp options = options { cmpFlag = False }
 
+setDecorators :: String -> Options -> Options
+setDecorators mode options = options { decoratorOption = Just mode }
+
 addGood, addBad, addBadRuntime :: FilePath -> Options -> Options
 addGood       f options = options { testSuiteOption = Just $ maybe ([f],[],[]) (first3  (f:)) $ testSuiteOption options }
 addBad        f options = options { testSuiteOption = Just $ maybe ([],[f],[]) (second3 (f:)) $ testSuiteOption options }
@@ -298,6 +309,7 @@ optDescr = [ Option []    ["debug"]       (NoArg  enableDebug         ) "print d
            , Option []    ["try-cabal"]   (NoArg  enableCabal         ) "try building with cabal after make failed"
            , Option []    ["no-make"]     (NoArg  disableMake         ) "do not run make"
            , Option []    ["no-cmp"]      (NoArg  disableCmp          ) "do not compare actual with expected output"
+           , Option ['d'] ["decorators"]  (ReqArg setDecorators "MODE") "transpile decorators with dispatch MODE"
            , Option ['g'] ["good"]        (ReqArg addGood       "FILE") "good test case FILE"
            , Option ['b'] ["bad"]         (ReqArg addBad        "FILE") "bad test case FILE"
            , Option ['r'] ["bad-runtime"] (ReqArg addBadRuntime "FILE") "bad-runtime test case FILE"
@@ -312,10 +324,11 @@ parseArgs argv = case getOpt RequireOrder optDescr argv of
 
    where
       buildArgs parsedOptions srcDir = do
-         let defaultOptions = Options False False True True Nothing
+         let defaultOptions = Options False False True True Nothing Nothing
              options = foldr ($) defaultOptions parsedOptions
          when (debugFlag options)      $ writeIORef doDebug True
          when (not $ cmpFlag  options) $ writeIORef doCmp   False
+         whenJust (decoratorOption options) $ \mode -> writeIORef transpilerArgs ["-d", mode]
          let testSuite    = fromMaybe (["good"],["bad"],["bad-runtime"]) $ testSuiteOption options
              expandPath f = doesDirectoryExist f >>= \b -> if b then listTestFiles f else return [f]
          testSuite' <- tripleM (concatMapM expandPath) testSuite
@@ -323,7 +336,7 @@ parseArgs argv = case getOpt RequireOrder optDescr argv of
 
 usage :: IO ()
 usage = do
-  hPutStrLn stderr "Usage: test-transpiler [--debug] [--no-make] [--no-cmp]"
+  hPutStrLn stderr "Usage: test-transpiler [--debug] [--no-make] [--no-cmp] [-d|--decorators MODE]"
   hPutStrLn stderr "           [-g|--good FILE]... [-b|--bad FILE]... [-r|--bad-runtime FILE]..."
   hPutStrLn stderr "           [transpiler_code_directory]"
   exitFailure